@@ -0,0 +1,246 @@
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Single pass implementation of the CombX rankFusion algorithms.
+ * For every topic the blocks of all the runs are read once, collecting for each document the min, max, sum and
+ * count of its scores and the scores needed for the median; every CombX ranking is then produced from these
+ * aggregates. The results are the same of the corresponding methods of Fusion.
+ */
+public class CombEngine {
+    //doc --> position of the document in the aggregates, in order of first appearance
+    private final DocIndex slots = new DocIndex(1024);
+    private int nDocs;
+    private int topicNumber;
+    private int[] docs = new int[1024];
+    private int[] count = new int[1024];
+    private double[] min = new double[1024];
+    private double[] max = new double[1024];
+    private double[] sum = new double[1024];
+    //scores of the added rows with the slot of their document, used by the median
+    private int nRows;
+    private int[] rowSlot = new int[4096];
+    private double[] rowScore = new double[4096];
+    private double[] medianScores = new double[4096];
+    //scores of the block being added
+    private double[] blockScores = new double[1024];
+
+    /**
+     * Compute all the CombX rankings
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @return for each method, array of TopicResult, one for each topic
+     */
+    public static EnumMap<CombMethod, TopicResult[]> fuse(TopicResult[][] data) {
+        return fuse(data, EnumSet.allOf(CombMethod.class));
+    }
+
+    /**
+     * Compute the given CombX rankings
+     *
+     * @param data    matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param methods methods to compute
+     * @return for each method, array of TopicResult, one for each topic
+     */
+    public static EnumMap<CombMethod, TopicResult[]> fuse(TopicResult[][] data, Set<CombMethod> methods) {
+        return fuse(data, methods, false);
+    }
+
+    /**
+     * Compute the given CombX rankings
+     *
+     * @param data     matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param methods  methods to compute
+     * @param parallel if true the topics are fused in parallel, each one with its own engine
+     * @return for each method, array of TopicResult, one for each topic
+     */
+    public static EnumMap<CombMethod, TopicResult[]> fuse(TopicResult[][] data, Set<CombMethod> methods, boolean parallel) {
+        return fuse(data, null, methods, parallel);
+    }
+
+    /**
+     * Normalize the data and compute all the CombX rankings in a single pass: each score is normalized when it is
+     * added to the aggregates, so the normalized data are never built. The results are the same of
+     * fuse(Normalization.normalize(data, norm))
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param norm normalization method
+     * @return for each method, array of TopicResult, one for each topic
+     */
+    public static EnumMap<CombMethod, TopicResult[]> fuse(TopicResult[][] data, NormMethod norm) {
+        return fuse(data, norm, EnumSet.allOf(CombMethod.class), false);
+    }
+
+    /**
+     * Normalize the data and compute the given CombX rankings in a single pass, see fuse(data, norm)
+     *
+     * @param data     matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param norm     normalization method, null to use the scores as they are
+     * @param methods  methods to compute
+     * @param parallel if true the topics are fused in parallel, each one with its own engine
+     * @return for each method, array of TopicResult, one for each topic
+     */
+    public static EnumMap<CombMethod, TopicResult[]> fuse(TopicResult[][] data, NormMethod norm, Set<CombMethod> methods,
+                                                          boolean parallel) {
+        EnumMap<CombMethod, TopicResult[]> results = new EnumMap<>(CombMethod.class);
+        for (CombMethod method : methods) {
+            results.put(method, new TopicResult[data.length]);
+        }
+        if (parallel) {
+            IntStream.range(0, data.length).parallel()
+                    .forEach(topic -> new CombEngine().fuseTopic(data, norm, topic, results));
+        } else {
+            CombEngine engine = new CombEngine();
+            for (int topic = 0; topic < data.length; topic++) {
+                engine.fuseTopic(data, norm, topic, results);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Util function for fuse, compute the rankings of a single topic
+     *
+     * @param data    matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param norm    normalization method, null to use the scores as they are
+     * @param topic   index of the topic
+     * @param results for each method, array where the ranking of the topic is stored
+     */
+    private void fuseTopic(TopicResult[][] data, NormMethod norm, int topic, EnumMap<CombMethod, TopicResult[]> results) {
+        clear();
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            if (blockScores.length < block.size()) blockScores = new double[block.size()];
+            block.getScores(blockScores, 0);
+            //new_score=(old_score-shift)/divisor+bias, computed as in TopicResult.normalizedView
+            double[] p = norm == null ? null : Normalization.getParameters(block, norm);
+            if (p != null && (p[0] != 0 || p[1] != 1 || p[2] != 0)) {
+                ScoreKernels.normalize(blockScores, 0, blockScores, 0, block.size(), p[0], p[1], p[2]);
+            }
+            for (int i = 0; i < block.size(); i++) {
+                add(block.getTopic(i), block.getDoc(i), blockScores[i]);
+            }
+        }
+        for (Map.Entry<CombMethod, TopicResult[]> entry : results.entrySet()) {
+            entry.getValue()[topic] = getResult(entry.getKey(), topic);
+        }
+    }
+
+    /**
+     * Remove all the documents, keeping the allocated buffers
+     */
+    public void clear() {
+        slots.clear();
+        nDocs = 0;
+        nRows = 0;
+    }
+
+    /**
+     * Add the score of a document in a run
+     *
+     * @param topic topic number
+     * @param doc   id of the document
+     * @param score normalized score of the document
+     */
+    public void add(int topic, int doc, double score) {
+        int slot = slots.get(doc);
+        if (slot == -1) {
+            if (nDocs == docs.length) growDocs();
+            slot = nDocs++;
+            slots.put(doc, slot);
+            docs[slot] = doc;
+            count[slot] = 1;
+            min[slot] = score;
+            max[slot] = score;
+            sum[slot] = score;
+            topicNumber = topic;
+        } else {
+            count[slot]++;
+            min[slot] = Math.min(min[slot], score);
+            max[slot] = Math.max(max[slot], score);
+            sum[slot] += score;
+        }
+        if (nRows == rowSlot.length) {
+            rowSlot = Arrays.copyOf(rowSlot, 2 * nRows);
+            rowScore = Arrays.copyOf(rowScore, 2 * nRows);
+        }
+        rowSlot[nRows] = slot;
+        rowScore[nRows] = score;
+        nRows++;
+    }
+
+    /**
+     * Returns the ranking of the added documents according to a CombX method
+     *
+     * @param method  fusion method
+     * @param idTopic id of the topic of the result
+     * @return ranked documents
+     */
+    public TopicResult getResult(CombMethod method, int idTopic) {
+        TopicResult result = new TopicResult(idTopic);
+        double[] scores = method == CombMethod.MED ? computeMedians() : null;
+        for (int slot = 0; slot < nDocs; slot++) {
+            double score;
+            switch (method) {
+                case MIN:
+                    score = min[slot];
+                    break;
+                case MAX:
+                    score = max[slot];
+                    break;
+                case SUM:
+                    score = sum[slot];
+                    break;
+                case ANZ:
+                    score = sum[slot] / count[slot];
+                    break;
+                case MNZ:
+                    score = sum[slot] * count[slot];
+                    break;
+                default:
+                    score = scores[slot];
+            }
+            result.appendRow(topicNumber, docs[slot], slot, score, -1);
+        }
+        //Sort results based on the scores
+        result.computeRanking();
+        return result;
+    }
+
+    /**
+     * Compute the median score of every document, as in Fusion.combMed
+     *
+     * @return medians, one for each document
+     */
+    private double[] computeMedians() {
+        //group the scores of every document in a contiguous range
+        int[] start = new int[nDocs + 1];
+        for (int slot = 0; slot < nDocs; slot++) {
+            start[slot + 1] = start[slot] + count[slot];
+        }
+        if (medianScores.length < nRows) medianScores = new double[rowScore.length];
+        int[] next = Arrays.copyOf(start, nDocs);
+        for (int row = 0; row < nRows; row++) {
+            medianScores[next[rowSlot[row]]++] = rowScore[row];
+        }
+        double[] medians = new double[nDocs];
+        for (int slot = 0; slot < nDocs; slot++) {
+            medians[slot] = Median.median(medianScores, start[slot], start[slot + 1]);
+        }
+        return medians;
+    }
+
+    private void growDocs() {
+        int capacity = 2 * docs.length;
+        docs = Arrays.copyOf(docs, capacity);
+        count = Arrays.copyOf(count, capacity);
+        min = Arrays.copyOf(min, capacity);
+        max = Arrays.copyOf(max, capacity);
+        sum = Arrays.copyOf(sum, capacity);
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * CombX rank fusion methods, computed from the normalized scores that every run assigns to a document
+ */
+public enum CombMethod {
+    /**
+     * minimum score
+     */
+    MIN,
+    /**
+     * maximum score
+     */
+    MAX,
+    /**
+     * sum of the scores
+     */
+    SUM,
+    /**
+     * sum of the scores divided by the number of runs that retrieved the document
+     */
+    ANZ,
+    /**
+     * sum of the scores multiplied by the number of runs that retrieved the document
+     */
+    MNZ,
+    /**
+     * median score
+     */
+    MED
+}
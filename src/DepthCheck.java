@@ -0,0 +1,80 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Check that the text and the cache paths of RunCache agree on the rank cutoff: every depth less than 1 must be
+ * rejected by both paths, and a depth of 1 must give exactly the first row of every topic block of the complete run.
+ * Usage: DepthCheck [folder] [extension]
+ */
+public class DepthCheck {
+    public static void main(String[] args) throws IOException {
+        String folderName = args.length > 0 ? args[0] : "TREC7";
+        String fileExtension = args.length > 1 ? args[1] : ".res";
+
+        int failures = 0;
+        for (File run : Parser.listRuns(folderName, fileExtension)) {
+            //the complete run, which also brings the cache up to date
+            RunCache full = RunCache.load(run);
+
+            //depth 0: rejected by the text path and by the cache path
+            if (!rejected(run, 0, false) || !rejected(run, 0, true)) {
+                System.out.println(run.getName() + ": depth 0 not rejected");
+                failures++;
+            }
+
+            //depth 1: the first row of every block, from the text and from the cache
+            RunCache text = RunCache.parse(run, 1);
+            RunCache cached = RunCache.load(run, 1);
+            if (!isFirstRows(full, text) || !isFirstRows(full, cached)) {
+                System.out.println(run.getName() + ": depth 1 does not return the first row of every topic");
+                failures++;
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " errors");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Util function for main, check if a depth is rejected
+     *
+     * @param run   file containing the run
+     * @param depth number of rows to keep for every topic
+     * @param cache true to load the run through its cache, false to parse the text
+     * @return true if an IllegalArgumentException has been thrown
+     * @throws IOException if the run can not be read
+     */
+    private static boolean rejected(File run, int depth, boolean cache) throws IOException {
+        try {
+            if (cache) {
+                RunCache.load(run, depth);
+            } else {
+                RunCache.parse(run, depth);
+            }
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Util function for main, check if a run cut at depth 1 contains exactly the first row of every block of the
+     * complete run
+     *
+     * @param full complete run
+     * @param cut  run cut at depth 1
+     * @return true if the rows are the same
+     */
+    private static boolean isFirstRows(RunCache full, RunCache cut) {
+        if (cut.getBlockCount() != full.getBlockCount()) return false;
+        for (int b = 0; b < full.getBlockCount(); b++) {
+            if (cut.getBlockTopic(b) != full.getBlockTopic(b) || cut.getBlockSize(b) != 1) return false;
+            if (cut.getDoc(b, 0) != full.getDoc(b, 0) || cut.getRank(b, 0) != full.getRank(b, 0)
+                    || cut.getScore(b, 0) != full.getScore(b, 0)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Global dictionary of the document ids: every TREC docno (e.g. FT932-16710) is mapped to a dense int.
+ * The dictionary is shared by all the runs, so the same document has the same int id in every run and
+ * the docno strings are needed only when the results are written.
+ */
+public class DocDictionary {
+    private static final HashMap<String, Integer> ids = new HashMap<>();
+    private static final ArrayList<String> names = new ArrayList<>();
+
+    private DocDictionary() {
+    }
+
+    /**
+     * Returns the int id of a document, adding the document to the dictionary if not present
+     *
+     * @param docName TREC docno
+     * @return id of the document
+     */
+    public static synchronized int intern(String docName) {
+        Integer id = ids.get(docName);
+        if (id == null) {
+            id = names.size();
+            ids.put(docName, id);
+            names.add(docName);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the int ids of a list of documents, adding the missing ones to the dictionary
+     *
+     * @param docNames TREC docnos
+     * @return array of ids, one for each document
+     */
+    public static synchronized int[] internAll(String[] docNames) {
+        int[] docIds = new int[docNames.length];
+        for (int i = 0; i < docNames.length; i++) {
+            docIds[i] = intern(docNames[i]);
+        }
+        return docIds;
+    }
+
+    /**
+     * Returns the TREC docno of a document
+     *
+     * @param id id of the document
+     * @return docno
+     */
+    public static synchronized String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * get the number of documents in the dictionary
+     * @return number of distinct documents
+     */
+    public static synchronized int size() {
+        return names.size();
+    }
+}
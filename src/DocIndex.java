@@ -0,0 +1,110 @@
+import java.util.Arrays;
+
+/**
+ * Hash map from doc ids (non negative, as assigned by the DocDictionary) to int values, with open addressing
+ * over primitive arrays and linear probing.
+ */
+public class DocIndex {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Create an empty index
+     */
+    public DocIndex() {
+        this(16);
+    }
+
+    /**
+     * Create an empty index
+     *
+     * @param expectedSize number of keys that can be inserted without resizing the table
+     */
+    public DocIndex(int expectedSize) {
+        int capacity = 16;
+        while (capacity < 2 * expectedSize) capacity <<= 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Returns the value associated to a doc
+     *
+     * @param doc doc id
+     * @return value, -1 if the doc is not present
+     */
+    public int get(int doc) {
+        int mask = keys.length - 1;
+        int slot = hash(doc) & mask;
+        int key;
+        while ((key = keys[slot]) != EMPTY) {
+            if (key == doc) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Associate a value to a doc, replacing the previous value if present
+     *
+     * @param doc   doc id
+     * @param value value
+     */
+    public void put(int doc, int value) {
+        int mask = keys.length - 1;
+        int slot = hash(doc) & mask;
+        int key;
+        while ((key = keys[slot]) != EMPTY) {
+            if (key == doc) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = doc;
+        values[slot] = value;
+        if (2 * ++size > keys.length) rehash();
+    }
+
+    /**
+     * get the number of docs in the index
+     * @return number of docs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all the docs from the index, keeping the allocated table
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[2 * oldKeys.length];
+        values = new int[2 * oldKeys.length];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int doc) {
+        int h = doc * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,11 +1,16 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 
 /**
  * Implementation of rankFusion Algorithms
  */
 public class Fusion {
+    //rank of a document not retrieved by a run, used by condorcetFuse
+    private static final int MISSING_RANK = Integer.MIN_VALUE;
+    //constant of Reciprocal Rank Fusion, as proposed by Cormack et al.
+    private static final int RRF_K = 60;
 
     /**
      * Implementation of combMin rankFusion algorithm
@@ -14,27 +19,44 @@ public class Fusion {
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] combMin(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] combMinResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            combMinResult[topic] = new TopicResult(topic);
-        }
-
-        for (int topic = 0; topic < combMinResult.length; topic++) {
-            int idx;
-            for (int run = 0; run < data[topic].length; run++) {
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    idx = combMinResult[topic].search(currentRow.getDoc());
-                    if (idx != -1) {
-                        combMinResult[topic].setScore(idx, Math.min(combMinResult[topic].getScore(idx), currentRow.getScore()));
-                    } else
-                        combMinResult[topic].appendRow(new ResultRow(currentRow.getRun(), currentRow.getTopic(), currentRow.getDoc(), currentRow.getRank(), currentRow.getScore()));
-                }
-            }
+        return combMin(data, false);
+    }
 
-            //Sort results based on the scores
-            combMinResult[topic].computeRanking();
+    /**
+     * Implementation of combMin rankFusion algorithm
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] combMin(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::combMinTopic);
+    }
+
+    /**
+     * Util function for combMin, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult combMinTopic(TopicResult[][] data, int topic) {
+        TopicResult combMinResult = new TopicResult(topic);
+        int idx;
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                idx = combMinResult.search(block.getDoc(i));
+                if (idx != -1) {
+                    combMinResult.setScore(idx, Math.min(combMinResult.getScore(idx), block.getScore(i)));
+                } else
+                    combMinResult.appendRow(block.getTopic(i), block.getDoc(i), block.getRank(i), block.getScore(i), block.getRun());
+            }
         }
+
+        //Sort results based on the scores
+        combMinResult.computeRanking();
         return combMinResult;
     }
 
@@ -45,34 +67,49 @@ public class Fusion {
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] combMax(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] combMaxResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            combMaxResult[topic] = new TopicResult(100, topic);
-        }
-
-        //For each topic
-        for (int topic = 0; topic < combMaxResult.length; topic++) {
-            int idx;
-            //For each block of results of the current topic in each run
-            for (int run = 0; run < data[topic].length; run++) {
-                //For each row in the block
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    //Search for this document in the results
-                    idx = combMaxResult[topic].search(currentRow.getDoc());
-                    //If found, update the score, otherwise append a new row to the results
-                    if (idx != -1) {
-                        combMaxResult[topic].setScore(idx, Math.max(combMaxResult[topic].getScore(idx), currentRow.getScore()));
-                    } else {
-                        combMaxResult[topic].appendRow(new ResultRow(currentRow.getRun(), currentRow.getTopic(), currentRow.getDoc(), currentRow.getRank(), currentRow.getScore()));
-                    }
+        return combMax(data, false);
+    }
+
+    /**
+     * Implementation of combMax rankFusion algorithm
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] combMax(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::combMaxTopic);
+    }
+
+    /**
+     * Util function for combMax, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult combMaxTopic(TopicResult[][] data, int topic) {
+        TopicResult combMaxResult = new TopicResult(100, topic);
+        int idx;
+        //For each block of results of the current topic in each run
+        for (int run = 0; run < data[topic].length; run++) {
+            //For each row in the block
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                //Search for this document in the results
+                idx = combMaxResult.search(block.getDoc(i));
+                //If found, update the score, otherwise append a new row to the results
+                if (idx != -1) {
+                    combMaxResult.setScore(idx, Math.max(combMaxResult.getScore(idx), block.getScore(i)));
+                } else {
+                    combMaxResult.appendRow(block.getTopic(i), block.getDoc(i), block.getRank(i), block.getScore(i), block.getRun());
                 }
             }
-
-            //Sort results based on the scores
-            combMaxResult[topic].computeRanking();
         }
 
+        //Sort results based on the scores
+        combMaxResult.computeRanking();
         return combMaxResult;
     }
 
@@ -83,27 +120,44 @@ public class Fusion {
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] combSum(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] combSumResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            combSumResult[topic] = new TopicResult(topic);
-        }
-
-        for (int topic = 0; topic < combSumResult.length; topic++) {
-            int idx;
-            for (int run = 0; run < data[topic].length; run++) {
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    //for each row of the TopicResult, search if the document is already in the result structure
-                    idx = combSumResult[topic].search(currentRow.getDoc());
-                    //If the document is present, update the score, otherwise append a new ResultRow to the result structure
-                    if (idx != -1) {
-                        combSumResult[topic].setScore(idx, combSumResult[topic].getScore(idx) + currentRow.getScore());
-                    } else
-                        combSumResult[topic].appendRow(new ResultRow(currentRow.getRun(), currentRow.getTopic(), currentRow.getDoc(), currentRow.getRank(), currentRow.getScore()));
-                }
+        return combSum(data, false);
+    }
+
+    /**
+     * Implementation of combSum rankFusion algorithm
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] combSum(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::combSumTopic);
+    }
+
+    /**
+     * Util function for combSum, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult combSumTopic(TopicResult[][] data, int topic) {
+        TopicResult combSumResult = new TopicResult(topic);
+        int idx;
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                //for each row of the TopicResult, search if the document is already in the result structure
+                idx = combSumResult.search(block.getDoc(i));
+                //If the document is present, update the score, otherwise append a new ResultRow to the result structure
+                if (idx != -1) {
+                    combSumResult.setScore(idx, combSumResult.getScore(idx) + block.getScore(i));
+                } else
+                    combSumResult.appendRow(block.getTopic(i), block.getDoc(i), block.getRank(i), block.getScore(i), block.getRun());
             }
-            combSumResult[topic].computeRanking();
         }
+        combSumResult.computeRanking();
         return combSumResult;
     }
 
@@ -114,38 +168,55 @@ public class Fusion {
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] combAnz(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] combAnzResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            combAnzResult[topic] = new TopicResult(topic);
-        }
+        return combAnz(data, false);
+    }
+
+    /**
+     * Implementation of combAnz rankFusion algorithm
+     *
+     * @param data matrix of Topicresult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] combAnz(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::combAnzTopic);
+    }
+
+    /**
+     * Util function for combAnz, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult combAnzTopic(TopicResult[][] data, int topic) {
+        TopicResult combAnzResult = new TopicResult(topic);
+        int idx;
         //Arraylist containing the number of summed scores for each document
-        ArrayList<Integer> count;
-        for (int topic = 0; topic < combAnzResult.length; topic++) {
-            int idx;
-            count = new ArrayList<Integer>();
-            for (int run = 0; run < data[topic].length; run++) {
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    idx = combAnzResult[topic].search(currentRow.getDoc());
-                    if (idx != -1) {
-                        //sum the score to the others
-                        combAnzResult[topic].setScore(idx, combAnzResult[topic].getScore(idx) + currentRow.getScore());
-                        //increment the counter of the relative document
-                        count.set(idx, count.get(idx) + 1);
-                    } else {
-                        //add a new ResultRow with count=1
-                        combAnzResult[topic].appendRow(new ResultRow(currentRow.getRun(), currentRow.getTopic(), currentRow.getDoc(), currentRow.getRank(), currentRow.getScore()));
-                        count.add(1);
-                    }
+        ArrayList<Integer> count = new ArrayList<Integer>();
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                idx = combAnzResult.search(block.getDoc(i));
+                if (idx != -1) {
+                    //sum the score to the others
+                    combAnzResult.setScore(idx, combAnzResult.getScore(idx) + block.getScore(i));
+                    //increment the counter of the relative document
+                    count.set(idx, count.get(idx) + 1);
+                } else {
+                    //add a new ResultRow with count=1
+                    combAnzResult.appendRow(block.getTopic(i), block.getDoc(i), block.getRank(i), block.getScore(i), block.getRun());
+                    count.add(1);
                 }
             }
-            //compute the average
-            for (int i = 0; i < combAnzResult[topic].size(); i++) {
-                combAnzResult[topic].setScore(i, combAnzResult[topic].getScore(i) / count.get(i));
-            }
-            //sort documents based on scores
-            combAnzResult[topic].computeRanking();
         }
+        //compute the average
+        for (int i = 0; i < combAnzResult.size(); i++) {
+            combAnzResult.setScore(i, combAnzResult.getScore(i) / count.get(i));
+        }
+        //sort documents based on scores
+        combAnzResult.computeRanking();
         return combAnzResult;
     }
 
@@ -156,84 +227,322 @@ public class Fusion {
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] combMnz(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] combMnzResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            combMnzResult[topic] = new TopicResult(topic);
-        }
-        ArrayList<Integer> count;
-        for (int topic = 0; topic < combMnzResult.length; topic++) {
-            int idx;
-            count = new ArrayList<Integer>();
-            for (int run = 0; run < data[topic].length; run++) {
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    idx = combMnzResult[topic].search(currentRow.getDoc());
-                    if (idx != -1) {
-                        combMnzResult[topic].setScore(idx, combMnzResult[topic].getScore(idx) + currentRow.getScore());
-                        count.set(idx, count.get(idx) + 1);
-                    } else {
-                        combMnzResult[topic].appendRow(new ResultRow(currentRow.getRun(), currentRow.getTopic(), currentRow.getDoc(), currentRow.getRank(), currentRow.getScore()));
-                        count.add(1);
-                    }
+        return combMnz(data, false);
+    }
+
+    /**
+     * Implementation of combMnz rankFusion algorithm
+     *
+     * @param data matrix of Topicresult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] combMnz(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::combMnzTopic);
+    }
+
+    /**
+     * Util function for combMnz, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult combMnzTopic(TopicResult[][] data, int topic) {
+        TopicResult combMnzResult = new TopicResult(topic);
+        int idx;
+        ArrayList<Integer> count = new ArrayList<Integer>();
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                idx = combMnzResult.search(block.getDoc(i));
+                if (idx != -1) {
+                    combMnzResult.setScore(idx, combMnzResult.getScore(idx) + block.getScore(i));
+                    count.set(idx, count.get(idx) + 1);
+                } else {
+                    combMnzResult.appendRow(block.getTopic(i), block.getDoc(i), block.getRank(i), block.getScore(i), block.getRun());
+                    count.add(1);
                 }
             }
-            for (int i = 0; i < combMnzResult[topic].size(); i++) {
-                combMnzResult[topic].setScore(i, combMnzResult[topic].getScore(i) * count.get(i));
-            }
-            combMnzResult[topic].computeRanking();
         }
+        for (int i = 0; i < combMnzResult.size(); i++) {
+            combMnzResult.setScore(i, combMnzResult.getScore(i) * count.get(i));
+        }
+        combMnzResult.computeRanking();
         return combMnzResult;
     }
 
     /**
-     * Implementation of combMed rankFusion algorithm
+     * Implementation of combMed rankFusion algorithm: the score of a document is the median of its scores, the mean
+     * of the two middle scores if their number is even
      *
      * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] combMed(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] combMedResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            combMedResult[topic] = new TopicResult(topic);
-        }
-
-        //For each topic populate HashMap<idDoc,v> temp: idDoc is documentId and v is an ArrayList containing the ResulRows containing idDoc
-        for (int topic = 0; topic < combMedResult.length; topic++) {
-            HashMap<String, ArrayList<ResultRow>> temp = new HashMap<>();
-            //For each block of results of the current topic in each run
-            for (int run = 0; run < data[topic].length; run++) {
-                //For each row in the block
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    // populate the HashMap
-                    if (!temp.containsKey(currentRow.getDoc())) {
-                        ArrayList<ResultRow> newDoc = new ArrayList<>();
-                        newDoc.add(new ResultRow(currentRow.getRun(), currentRow.getTopic(), currentRow.getDoc(), currentRow.getRank(), currentRow.getScore()));
-                        temp.put(currentRow.getDoc(), newDoc);
-                    } else {
-                        temp.get(currentRow.getDoc()).add(new ResultRow(currentRow.getRun(), currentRow.getTopic(), currentRow.getDoc(), currentRow.getRank(), currentRow.getScore()));
+        return combMed(data, false);
+    }
+
+    /**
+     * Implementation of combMed rankFusion algorithm: the score of a document is the median of its scores, the mean
+     * of the two middle scores if their number is even
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] combMed(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::combMedTopic);
+    }
+
+    /**
+     * Util function for combMed, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult combMedTopic(TopicResult[][] data, int topic) {
+        TopicResult combMedResult = new TopicResult(topic);
+        //documents in order of first appearance, number of scores of each document
+        DocIndex docSlots = new DocIndex();
+        int[] docs = new int[16];
+        int[] count = new int[16];
+        int nDocs = 0;
+        int nRows = 0;
+        for (TopicResult block : data[topic]) {
+            nRows += block.size();
+        }
+        //scores of all the rows, with the position of their document
+        int[] rowSlot = new int[nRows];
+        double[] rowScore = new double[nRows];
+        int topicNumber = -1;
+        int row = 0;
+        //For each block of results of the current topic in each run
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                int slot = docSlots.get(block.getDoc(i));
+                if (slot == -1) {
+                    if (nDocs == docs.length) {
+                        docs = Arrays.copyOf(docs, 2 * nDocs);
+                        count = Arrays.copyOf(count, 2 * nDocs);
                     }
+                    slot = nDocs++;
+                    docSlots.put(block.getDoc(i), slot);
+                    docs[slot] = block.getDoc(i);
+                    topicNumber = block.getTopic(i);
                 }
+                count[slot]++;
+                rowSlot[row] = slot;
+                rowScore[row] = block.getScore(i);
+                row++;
             }
+        }
 
-            // Sort scores for each document and extract the median
-            for (String x : temp.keySet()) {
-                ArrayList<ResultRow> results = temp.get(x);
-                results.sort(ResultRow::compareTo);
-                ResultRow medianResultRow = results.get(results.size() / 2);
-                double score = medianResultRow.getScore();
-                // Handle arrays with an even number of element
-                if (results.size() % 2 == 0) {
-                    medianResultRow.setScore((score + results.get(results.size() / 2).getScore()) / 2);
+        //group the scores of every document in a contiguous range and extract the median
+        int[] start = new int[nDocs + 1];
+        for (int slot = 0; slot < nDocs; slot++) {
+            start[slot + 1] = start[slot] + count[slot];
+        }
+        int[] next = Arrays.copyOf(start, nDocs);
+        double[] scores = new double[nRows];
+        for (int r = 0; r < nRows; r++) {
+            scores[next[rowSlot[r]]++] = rowScore[r];
+        }
+        for (int slot = 0; slot < nDocs; slot++) {
+            combMedResult.appendRow(topicNumber, docs[slot], slot, Median.median(scores, start[slot], start[slot + 1]), -1);
+        }
+
+        //Sort results based on the scores
+        combMedResult.computeRanking();
+        return combMedResult;
+    }
+
+    /**
+     * Implementation of Reciprocal Rank Fusion (Cormack et al.): the score of a document is the sum over the runs of
+     * 1 / (RRF_K + rank), where rank is its position in the run counted from 1 after sorting the block by score.
+     * The ranks written in the run files are not used, since they can start from 0 or from 1.
+     * Only the rankings of the runs are used, so the input data do not need to be normalized
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] rrfFuse(TopicResult[][] data) {
+        return rrfFuse(data, false);
+    }
+
+    /**
+     * Implementation of Reciprocal Rank Fusion, see rrfFuse(data)
+     *
+     * @param data     matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] rrfFuse(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::rrfFuseTopic);
+    }
+
+    /**
+     * Util function for rrfFuse, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult rrfFuseTopic(TopicResult[][] data, int topic) {
+        TopicResult rrfResult = new TopicResult(topic);
+        int idx;
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                //1-based position of the row in the sorted block
+                double score = 1.0 / (RRF_K + i + 1);
+                idx = rrfResult.search(block.getDoc(i));
+                if (idx != -1) {
+                    rrfResult.setScore(idx, rrfResult.getScore(idx) + score);
+                } else {
+                    rrfResult.appendRow(block.getTopic(i), block.getDoc(i), block.getRank(i), score, block.getRun());
                 }
-                combMedResult[topic].appendRow(medianResultRow);
             }
+        }
+        //Sort results based on the scores
+        rrfResult.computeRanking();
+        return rrfResult;
+    }
+
+    /**
+     * Implementation of Borda count rankFusion algorithm: in each run a document gets as many points as the number
+     * of retrieved documents minus its position counted from 0 after sorting the block by score, so the first one
+     * gets as many points as the retrieved documents, the last one gets 1 and a document not retrieved gets none;
+     * the score of a document is the sum of its points. The ranks written in the run files are not used, since they
+     * can start from 0 or from 1.
+     * Only the rankings of the runs are used, so the input data do not need to be normalized
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] bordaFuse(TopicResult[][] data) {
+        return bordaFuse(data, false);
+    }
+
+    /**
+     * Implementation of Borda count rankFusion algorithm, see bordaFuse(data)
+     *
+     * @param data     matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] bordaFuse(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::bordaFuseTopic);
+    }
 
-            //Sort results based on the scores
-            combMedResult[topic].computeRanking();
+    /**
+     * Util function for bordaFuse, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult bordaFuseTopic(TopicResult[][] data, int topic) {
+        TopicResult bordaResult = new TopicResult(topic);
+        int idx;
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                //position of the row in the sorted block, the last row gets 1 point
+                double score = block.size() - i;
+                idx = bordaResult.search(block.getDoc(i));
+                if (idx != -1) {
+                    bordaResult.setScore(idx, bordaResult.getScore(idx) + score);
+                } else {
+                    bordaResult.appendRow(block.getTopic(i), block.getDoc(i), block.getRank(i), score, block.getRun());
+                }
+            }
         }
+        //Sort results based on the scores
+        bordaResult.computeRanking();
+        return bordaResult;
+    }
 
-        return combMedResult;
+    /**
+     * Compute the first k documents of combSum, combMax or combMnz, using the No Random Access algorithm of Fagin et al.
+     * <p>
+     * The blocks of the runs are read in parallel from the top, by sorted access only: for every document read the
+     * scores found so far are kept, and its fused score is bounded by the scores that it could still get from the
+     * runs where it has not been read yet. The reading stops as soon as the k documents with the best lower bounds
+     * surely beat every other document, read or not. The blocks where the score of one of these k documents is still
+     * unknown are then read on, until the document is found or the block ends, to compute its exact fused score.
+     * <p>
+     * Rows touched: the first rows of every block down to the stopping depth, the following rows of the blocks that
+     * miss one of the k documents, and the last row of every block (its minimum score, used by the bounds). All the
+     * rows are read when no early stop is possible, e.g. when the k-th and the (k+1)-th documents have the same score.
+     * The blocks are only read: like in the other fusion methods their rows are sorted by score, which does nothing
+     * on the input runs. The returned documents, scores and ties order are the same of the first k rows of the
+     * corresponding Fusion method; a document retrieved twice by the same run is counted once, with its first score
+     *
+     * @param data   matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param method fusion method, one of SUM, MAX and MNZ
+     * @param k      number of documents to return for each topic
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] topK(TopicResult[][] data, CombMethod method, int k) {
+        return topK(data, method, k, false);
+    }
+
+    /**
+     * Compute the first k documents of combSum, combMax or combMnz, see topK(data, method, k)
+     *
+     * @param data     matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param method   fusion method, one of SUM, MAX and MNZ
+     * @param k        number of documents to return for each topic
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] topK(TopicResult[][] data, CombMethod method, int k, boolean parallel) {
+        if (method != CombMethod.SUM && method != CombMethod.MAX && method != CombMethod.MNZ) {
+            throw new IllegalArgumentException("Top-k fusion is not supported for " + method);
+        }
+        if (k < 0) throw new IllegalArgumentException("Negative number of documents: " + k);
+        return fuseTopics(data, parallel, (d, topic) -> new TopKTopic(d[topic], method, k).fuse(topic));
+    }
+
+    /**
+     * Util function for topK, add a score to a min-heap of the best scores
+     *
+     * @param heap  min-heap
+     * @param size  number of scores in the heap
+     * @param score score to add
+     * @return new number of scores in the heap
+     */
+    private static int heapOffer(double[] heap, int size, double score) {
+        if (size == heap.length) {
+            if (size == 0 || Double.compare(score, heap[0]) <= 0) return size;
+            //replace the minimum and sift down
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && Double.compare(heap[child + 1], heap[child]) < 0) child++;
+                if (Double.compare(heap[child], score) >= 0) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = score;
+            return size;
+        }
+        //append and sift up
+        int i = size;
+        while (i > 0 && Double.compare(heap[(i - 1) / 2], score) > 0) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = score;
+        return size + 1;
     }
 
     /**
@@ -254,77 +563,305 @@ public class Fusion {
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] condorcetFuse(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] condorcetFuseResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            condorcetFuseResult[topic] = new TopicResult(topic);
-        }
-
-        //For each topic populate HashMap<idDoc,HashMap<run,rank>> temp: idDoc is documentId rank is the ranking position
-        //of IdDoc in the corresponding run
-        for (int topic = 0; topic < condorcetFuseResult.length; topic++) {
-            HashMap<String, HashMap<Integer, Integer>> docRanks = new HashMap<>();
-            //For each block of results of the current topic in each run
-            for (int run = 0; run < data[topic].length; run++) {
-                //For each row in the block
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    // populate the HashMap
-                    if (!docRanks.containsKey(currentRow.getDoc())) {
-                        HashMap<Integer, Integer> newDoc = new HashMap<>();
-                        newDoc.put(currentRow.getRun(), currentRow.getRank());
-                        docRanks.put(currentRow.getDoc(), newDoc);
-                    } else {
-                        docRanks.get(currentRow.getDoc()).put(currentRow.getRun(), currentRow.getRank());
-                    }
-                }
-            }
+        return condorcetFuse(data, false);
+    }
 
-            // Sort scores using the condorcet algorithm
-            String[] topicDocs = docRanks.keySet().toArray(new String[docRanks.keySet().size()]);
+    /**
+     * Implementation of Condorcet-fuse rankFusion algorithm
+     * <p>
+     * Ranking
+     * 1: count = 0
+     * 2: for each of the k search systems Si do
+     * 3: If Si ranks d1 above d2, count++
+     * 4: If Si ranks d2 above d1, count−−
+     * 5: If count > 0,rank d1 better than d2
+     * 6: Else rank d2 better than d1
+     * <p>
+     * Fusion
+     * 7: Sort results based on the above ranking
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] condorcetFuse(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::condorcetFuseTopic);
+    }
 
-            //mergeSort(topicDocs, 0, topicDocs.length - 1, data, docRanks, topic);
-            //insertionSort(topicDocs, data, docRanks, topic);
-            quickSort(topicDocs, data, docRanks, topic);
+    /**
+     * Util function for condorcetFuse, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult condorcetFuseTopic(TopicResult[][] data, int topic) {
+        TopicResult condorcetFuseResult = new TopicResult(topic);
+        int nRuns = data[topic].length;
+        //documents of the topic in order of first appearance, row of each document in the rank matrix
+        DocIndex docRows = new DocIndex();
+        int[] docs = collectDocs(data, topic, docRows);
+        int[] ranks = rankMatrix(data, topic, docRows, docs.length);
 
-            // Here array is sorted; produce the right output
-            for (int i = 0; i < topicDocs.length; i++) {
-                condorcetFuseResult[topic].appendRow(data[topic][0].getRow(0).getTopic(), topicDocs[i], i, (double) (topicDocs.length - i) / topicDocs.length, -1);
-            }
+        // Sort documents using the condorcet algorithm
+        int[] topicDocs = new int[docs.length];
+        for (int d = 0; d < topicDocs.length; d++) {
+            topicDocs[d] = d;
+        }
+        mergeSort(topicDocs, (d1, d2) -> compareDocuments(ranks, nRuns, d1, d2));
+
+        // Here array is sorted; produce the right output
+        int topicNumber = topicNumber(data, topic);
+        for (int i = 0; i < topicDocs.length; i++) {
+            condorcetFuseResult.appendRow(topicNumber, docs[topicDocs[i]], i, (double) (topicDocs.length - i) / topicDocs.length, -1);
         }
         return condorcetFuseResult;
     }
 
+    /**
+     * Apply a fusion function to every topic, sequentially or in parallel on the common fork-join pool.
+     * Topics are independent, so the results are the same in both modes
+     *
+     * @param data     matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @param fuser    function that fuses a single topic
+     * @return array of TopicResult, one for each topic
+     */
+    private static TopicResult[] fuseTopics(TopicResult[][] data, boolean parallel, TopicFuser fuser) {
+        TopicResult[] result = new TopicResult[data.length];
+        IntStream topics = IntStream.range(0, data.length);
+        if (parallel) topics = topics.parallel();
+        topics.forEach(topic -> result[topic] = fuser.fuse(data, topic));
+        return result;
+    }
+
+    /**
+     * Fusion function for a single topic
+     */
+    private interface TopicFuser {
+        TopicResult fuse(TopicResult[][] data, int topic);
+    }
+
+    /**
+     * Util function for the condorcet fusions, list the documents retrieved for a topic by any run
+     *
+     * @param data    matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic   index of the topic
+     * @param docRows filled with the position of each document in the returned array
+     * @return ids of the documents, in order of first appearance
+     */
+    private static int[] collectDocs(TopicResult[][] data, int topic, DocIndex docRows) {
+        int[] docs = new int[16];
+        int n = 0;
+        for (int run = 0; run < data[topic].length; run++) {
+            TopicResult block = data[topic][run];
+            block.sortRows();
+            for (int i = 0; i < block.size(); i++) {
+                if (docRows.get(block.getDoc(i)) == -1) {
+                    if (n == docs.length) docs = Arrays.copyOf(docs, 2 * n);
+                    docRows.put(block.getDoc(i), n);
+                    docs[n++] = block.getDoc(i);
+                }
+            }
+        }
+        return Arrays.copyOf(docs, n);
+    }
+
+    /**
+     * Util function for the condorcet fusions, build the matrix of the ranking positions of the documents
+     *
+     * @param data    matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic   index of the topic
+     * @param docRows position of each document in the matrix, as filled by collectDocs
+     * @param nDocs   number of documents
+     * @return ranks[d * nRuns + run] = ranking position of document d in the run, MISSING_RANK if not retrieved
+     */
+    private static int[] rankMatrix(TopicResult[][] data, int topic, DocIndex docRows, int nDocs) {
+        int nRuns = data[topic].length;
+        int[] ranks = new int[nDocs * nRuns];
+        Arrays.fill(ranks, MISSING_RANK);
+        for (int run = 0; run < nRuns; run++) {
+            TopicResult block = data[topic][run];
+            for (int i = 0; i < block.size(); i++) {
+                ranks[docRows.get(block.getDoc(i)) * nRuns + run] = block.getRank(i);
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Util function for the condorcet fusions, find the topic number of a topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return topic number, as written in the runs, -1 if no run retrieved documents for the topic
+     */
+    private static int topicNumber(TopicResult[][] data, int topic) {
+        for (TopicResult block : data[topic]) {
+            if (block.size() > 0) return block.getTopic(0);
+        }
+        return -1;
+    }
+
     /**
      * Comparison function used by condorcetFuse to compare two documents
      *
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
-     * @param d1       document 1
-     * @param d2       document 2
+     * @param ranks ranking positions of the documents, ranks[d * nRuns + run], MISSING_RANK if not retrieved
+     * @param nRuns number of runs
+     * @param d1    row of document 1
+     * @param d2    row of document 2
      * @return importance of document 1 respect to document 2. If  return a number > 0, than d1 is more
      * important than d2; otherwise d2 is more important than d1
      */
-    private static int compareDocuments(TopicResult[][] data, HashMap<String, HashMap<Integer, Integer>> docRanks, int topic, String d1, String d2) {
+    private static int compareDocuments(int[] ranks, int nRuns, int d1, int d2) {
         int cont = 0;
-        for (int run = 0; run < data[topic].length; run++) {
-            if (docRanks.get(d1).containsKey(run) && docRanks.get(d2).containsKey(run)) {
-                if (docRanks.get(d1).get(run) < docRanks.get(d2).get(run)) {
+        int row1 = d1 * nRuns;
+        int row2 = d2 * nRuns;
+        for (int run = 0; run < nRuns; run++) {
+            int rank1 = ranks[row1 + run];
+            int rank2 = ranks[row2 + run];
+            if (rank1 != MISSING_RANK && rank2 != MISSING_RANK) {
+                if (rank1 < rank2) {
                     cont++;
                 } else {
                     cont--;
                 }
             } // If d2 is not present in the current run add score to d1
-            else if (docRanks.get(d1).containsKey(run) && !docRanks.get(d2).containsKey(run)) {
+            else if (rank1 != MISSING_RANK) {
                 cont++;
             } // If d1 is not present in the current run add score to d2
-            else if (!docRanks.get(d1).containsKey(run) && docRanks.get(d2).containsKey(run)) {
+            else if (rank2 != MISSING_RANK) {
                 cont--;
             }
         }
         return cont;
     }
 
+    /**
+     * Implementation of a net-wins variant of Condorcet-fuse rankFusion algorithm
+     * <p>
+     * Ranking
+     * 1: for each document d, count = 0
+     * 2: for each of the k search systems Si and each other document d2 do
+     * 3: If Si ranks d above d2, count++
+     * 4: If Si ranks d2 above d, count−−
+     * <p>
+     * Fusion
+     * 5: Sort results based on count
+     * <p>
+     * The comparisons are the same of condorcetFuse (a document not retrieved by a run is ranked below the retrieved
+     * ones, a tie is a loss for both documents), but every document is compared with all the others, so the ranking
+     * is well defined. The count sums the wins and losses of every run, so it is a Borda-like score: it is not a
+     * majority Copeland score, where each pair of documents counts once according to the majority of the runs.
+     * For each run the documents above and below a document are found by binary search in the sorted rankings
+     * of the run, in O(d log d) instead of O(d^2)
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] netWinsFuse(TopicResult[][] data) {
+        return netWinsFuse(data, false);
+    }
+
+    /**
+     * Implementation of a net-wins variant of Condorcet-fuse rankFusion algorithm, see netWinsFuse(data)
+     *
+     * @param data     matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] netWinsFuse(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::netWinsFuseTopic);
+    }
+
+    /**
+     * Util function for netWinsFuse, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult netWinsFuseTopic(TopicResult[][] data, int topic) {
+        TopicResult netWinsResult = new TopicResult(topic);
+        int nRuns = data[topic].length;
+        DocIndex docRows = new DocIndex();
+        int[] docs = collectDocs(data, topic, docRows);
+        int nDocs = docs.length;
+        int[] ranks = rankMatrix(data, topic, docRows, nDocs);
+
+        //wins minus losses of each document
+        long[] count = new long[nDocs];
+        int[] sortedRanks = new int[nDocs];
+        for (int run = 0; run < nRuns; run++) {
+            int nRetrieved = 0;
+            for (int d = 0; d < nDocs; d++) {
+                if (ranks[d * nRuns + run] != MISSING_RANK) sortedRanks[nRetrieved++] = ranks[d * nRuns + run];
+            }
+            Arrays.sort(sortedRanks, 0, nRetrieved);
+            int nMissing = nDocs - nRetrieved;
+            for (int d = 0; d < nDocs; d++) {
+                int rank = ranks[d * nRuns + run];
+                if (rank == MISSING_RANK) {
+                    //beaten by every retrieved document
+                    count[d] -= nRetrieved;
+                } else {
+                    //the documents ranked above come before the first occurrence of rank, the tied ones up to the last
+                    int above = lowerBound(sortedRanks, nRetrieved, rank);
+                    int tied = upperBound(sortedRanks, nRetrieved, rank) - above - 1;
+                    int below = nRetrieved - above - tied - 1;
+                    //a tie is a loss, a document not retrieved by the run is a win
+                    count[d] += below + nMissing - above - tied;
+                }
+            }
+        }
+
+        int topicNumber = topicNumber(data, topic);
+        for (int d = 0; d < nDocs; d++) {
+            netWinsResult.appendRow(topicNumber, docs[d], d, count[d], -1);
+        }
+        //Sort results based on the counts
+        netWinsResult.computeRanking();
+        return netWinsResult;
+    }
+
+    /**
+     * Util function for netWinsFuse, find the first occurrence of a ranking in the sorted rankings of a run
+     *
+     * @param sortedRanks rankings of the documents retrieved by the run, ascending
+     * @param n           number of rankings
+     * @param rank        ranking to find
+     * @return number of rankings smaller than rank
+     */
+    private static int lowerBound(int[] sortedRanks, int n, int rank) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedRanks[mid] < rank) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Util function for netWinsFuse, find the position after the last occurrence of a ranking in the sorted
+     * rankings of a run
+     *
+     * @param sortedRanks rankings of the documents retrieved by the run, ascending
+     * @param n           number of rankings
+     * @param rank        ranking to find
+     * @return number of rankings not greater than rank
+     */
+    private static int upperBound(int[] sortedRanks, int n, int rank) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedRanks[mid] <= rank) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
 
     /**
      * Implementation of Weighted-Condorcet-fuse rankFusion algorithm
@@ -344,288 +881,501 @@ public class Fusion {
      * @return array of TopicResult, one for each topic
      */
     public static TopicResult[] weightedCondorcetFuse(TopicResult[][] data) {
-        // Initialize output structure
-        TopicResult[] condorcetFuseResult = new TopicResult[data.length];
-        for (int topic = 0; topic < data.length; topic++) {
-            condorcetFuseResult[topic] = new TopicResult(topic);
-        }
-
-        //For each topic populate HashMap<idDoc,HashMap<run,score>> temp: idDoc is documentId rank is the ranking position
-        //of IdDoc in the corresponding run
-        for (int topic = 0; topic < condorcetFuseResult.length; topic++) {
-            HashMap<String, HashMap<Integer, Double>> docRanks = new HashMap<>();
-            //For each block of results of the current topic in each run
-            for (int run = 0; run < data[topic].length; run++) {
-                //For each row in the block
-                for (ResultRow currentRow : data[topic][run].getResultRows()) {
-                    // populate the HashMap
-                    if (!docRanks.containsKey(currentRow.getDoc())) {
-                        HashMap<Integer, Double> newDoc = new HashMap<>();
-                        newDoc.put(currentRow.getRun(), currentRow.getScore());
-                        docRanks.put(currentRow.getDoc(), newDoc);
-                    } else {
-                        docRanks.get(currentRow.getDoc()).put(currentRow.getRun(), currentRow.getScore());
-                    }
-                }
-            }
-
-            // Sort scores using the condorcet algorithm
-            String[] topicDocs = docRanks.keySet().toArray(new String[docRanks.keySet().size()]);
+        return weightedCondorcetFuse(data, false);
+    }
 
-            //mergeSort(topicDocs, 0, topicDocs.length - 1, data, docRanks, topic);
-            //insertionSort(topicDocs, data, docRanks, topic);
-            quickSortWeighted(topicDocs, data, docRanks, topic);
+    /**
+     * Implementation of Weighted-Condorcet-fuse rankFusion algorithm
+     * <p>
+     * Ranking
+     * 1: count = 0
+     * 2: for each of the k search systems Si do
+     * 3: If Si ranks d1 above d2, count+=(d1-d2)
+     * 4: If Si ranks d2 above d1, count−=(d2-d1)
+     * 5: If count > 0,rank d1 better than d2
+     * 6: Else rank d2 better than d1
+     * <p>
+     * Fusion
+     * 7: Sort results based on the above ranking
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param parallel if true the topics are fused in parallel
+     * @return array of TopicResult, one for each topic
+     */
+    public static TopicResult[] weightedCondorcetFuse(TopicResult[][] data, boolean parallel) {
+        return fuseTopics(data, parallel, Fusion::weightedCondorcetFuseTopic);
+    }
 
-            // Here array is sorted; produce the right output
-            for (int i = 0; i < topicDocs.length; i++) {
-                condorcetFuseResult[topic].appendRow(data[topic][0].getRow(0).getTopic(), topicDocs[i], i, (double) (topicDocs.length - i) / topicDocs.length, -1);
+    /**
+     * Util function for weightedCondorcetFuse, fuse the blocks of a single topic
+     *
+     * @param data  matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     * @param topic index of the topic
+     * @return TopicResult of the topic
+     */
+    private static TopicResult weightedCondorcetFuseTopic(TopicResult[][] data, int topic) {
+        TopicResult condorcetFuseResult = new TopicResult(topic);
+        int nRuns = data[topic].length;
+        //documents of the topic in order of first appearance, row of each document in the score matrix
+        DocIndex docRows = new DocIndex();
+        int[] docs = collectDocs(data, topic, docRows);
+        //scores[d * nRuns + run] = score of document d in the run, present[d * nRuns + run] = true if retrieved
+        //(a separate bitmap, since any double, NaN included, can be a genuine score)
+        double[] scores = new double[docs.length * nRuns];
+        boolean[] present = new boolean[docs.length * nRuns];
+        for (int run = 0; run < nRuns; run++) {
+            TopicResult block = data[topic][run];
+            for (int i = 0; i < block.size(); i++) {
+                int cell = docRows.get(block.getDoc(i)) * nRuns + run;
+                scores[cell] = block.getScore(i);
+                present[cell] = true;
             }
         }
+
+        // Sort documents using the condorcet algorithm
+        int[] topicDocs = new int[docs.length];
+        for (int d = 0; d < topicDocs.length; d++) {
+            topicDocs[d] = d;
+        }
+        mergeSort(topicDocs, (d1, d2) -> compareDocumentsWithWeights(scores, present, nRuns, d1, d2));
+
+        // Here array is sorted; produce the right output
+        int topicNumber = topicNumber(data, topic);
+        for (int i = 0; i < topicDocs.length; i++) {
+            condorcetFuseResult.appendRow(topicNumber, docs[topicDocs[i]], i, (double) (topicDocs.length - i) / topicDocs.length, -1);
+        }
         return condorcetFuseResult;
     }
 
     /**
      * Comparison function used by weightedCondorcetFuse to compare two documents
      *
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
-     * @param d1       document 1
-     * @param d2       document 2
+     * @param scores  scores of the documents, scores[d * nRuns + run]
+     * @param present present[d * nRuns + run] = true if document d has been retrieved by the run
+     * @param nRuns   number of runs
+     * @param d1      row of document 1
+     * @param d2      row of document 2
      * @return importance of document 1 respect to document 2. If  return a number > 0, than d1 is more
      * important than d2; otherwise d2 is more important than d1
      */
-    private static double compareDocumentsWithWeights(TopicResult[][] data, HashMap<String, HashMap<Integer, Double>> docRanks, int topic, String d1, String d2) {
+    private static double compareDocumentsWithWeights(double[] scores, boolean[] present, int nRuns, int d1, int d2) {
         double cont = 0;
-        for (int run = 0; run < data[topic].length; run++) {
-            if (docRanks.get(d1).containsKey(run) && docRanks.get(d2).containsKey(run)) {
-                if (docRanks.get(d1).get(run) > docRanks.get(d2).get(run)) {
-                    cont += docRanks.get(d1).get(run) - docRanks.get(d2).get(run);
+        int row1 = d1 * nRuns;
+        int row2 = d2 * nRuns;
+        for (int run = 0; run < nRuns; run++) {
+            double score1 = scores[row1 + run];
+            double score2 = scores[row2 + run];
+            boolean present1 = present[row1 + run];
+            boolean present2 = present[row2 + run];
+            if (present1 && present2) {
+                if (score1 > score2) {
+                    cont += score1 - score2;
                 } else {
-                    cont -= docRanks.get(d2).get(run) - docRanks.get(d1).get(run);
+                    cont -= score2 - score1;
                 }
             } // If d2 is not present in the current run add score to d1
-            else if (docRanks.get(d1).containsKey(run) && !docRanks.get(d2).containsKey(run)) {
-                cont += docRanks.get(d1).get(run);
+            else if (present1) {
+                cont += score1;
             } // If d1 is not present in the current run add score to d2
-            else if (!docRanks.get(d1).containsKey(run) && docRanks.get(d2).containsKey(run)) {
-                cont -= docRanks.get(d2).get(run);
+            else if (present2) {
+                cont -= score2;
             }
         }
         return cont;
     }
 
     /**
-     * Insertion sort algorithm
+     * Sort documents with a stable merge sort, sorting and merging the halves of large arrays in parallel on the
+     * common fork-join pool. The condorcet relation is not transitive, so the result depends on the algorithm: merge
+     * sort always performs the same comparisons and gives the same result for the same input order
      *
-     * @param array    array to sort
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
+     * @param arr        array to sort
+     * @param comparator comparison function between two documents
      */
-    private static void insertionSort(String[] array, TopicResult[][] data, HashMap<String, HashMap<Integer, Integer>> docRanks, int topic) {
-        String temp;
-        for (int i = 1; i < array.length; i++) {
-            temp = array[i];
-            int j = i;
-            while (j > 0 && compareDocuments(data, docRanks, topic, temp, array[j - 1]) > 0) {
-                array[j] = array[j - 1];
-                j--;
-            }
-            array[j] = temp;
-        }
+    private static void mergeSort(int[] arr, DocComparator comparator) {
+        new MergeSortTask(arr, new int[arr.length], 0, arr.length, comparator).invoke();
     }
 
     /**
-     * Quick sort algorithm
-     *
-     * @param arr      array to sort
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
+     * Comparison function between two documents
      */
-    private static void quickSort(String[] arr, TopicResult[][] data, HashMap<String, HashMap<Integer, Integer>> docRanks, int topic) {
-        quick(arr, 0, arr.length - 1, data, docRanks, topic);
+    private interface DocComparator {
+        /**
+         * @param d1 document 1
+         * @param d2 document 2
+         * @return a number > 0 if d1 is more important than d2
+         */
+        double compare(int d1, int d2);
     }
 
     /**
-     * Util function for quick sort
-     *  @param arr      array to sort
-     * @param start    start index
-     * @param end      end index
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
+     * Merge sort of a range of an array, used by mergeSort
      */
-    private static void quick(String[] arr, int start, int end, TopicResult[][] data, HashMap<String, HashMap<Integer, Integer>> docRanks, int topic) {
-        if (start < end) {
-            int pivot = partition(arr, start, end, data, docRanks, topic);
-            quick(arr, start, pivot - 1, data, docRanks, topic);
-            quick(arr, pivot + 1, end, data, docRanks, topic);
+    private static class MergeSortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        //ranges smaller than this are sorted by the current thread
+        private static final int SEQUENTIAL_THRESHOLD = 2048;
+
+        private final int[] arr;
+        private final int[] aux;
+        private final int start;
+        private final int end;
+        private final DocComparator comparator;
+
+        /**
+         * @param arr        array to sort
+         * @param aux        support array, same length of arr
+         * @param start      first index (inclusive)
+         * @param end        last index (exclusive)
+         * @param comparator comparison function between two documents
+         */
+        MergeSortTask(int[] arr, int[] aux, int start, int end, DocComparator comparator) {
+            this.arr = arr;
+            this.aux = aux;
+            this.start = start;
+            this.end = end;
+            this.comparator = comparator;
         }
-    }
 
-    /**
-     * Util function for quick sort, partition the elements around a pivot
-     *
-     * @param arr      array
-     * @param start    start index
-     * @param end      end index
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
-     * @return index of the pivot
-     */
-    private static int partition(String[] arr, int start, int end, TopicResult[][] data, HashMap<String, HashMap<Integer, Integer>> docRanks, int topic) {
-        int pivotIndex = start + (int) (Math.random() * (end - start + 1));
-        String pivot = arr[pivotIndex];
-        swap(arr, pivotIndex, end);
-        int i = start - 1;
-        for (int j = start; j < end - 1; j++) {
-            if (compareDocuments(data, docRanks, topic, arr[j], pivot) > 0) {
-                i++;
-                swap(arr, i, j);
+        @Override
+        protected void compute() {
+            if (end - start < SEQUENTIAL_THRESHOLD) {
+                sort(start, end);
+                return;
             }
+            int mid = (start + end) >>> 1;
+            invokeAll(new MergeSortTask(arr, aux, start, mid, comparator), new MergeSortTask(arr, aux, mid, end, comparator));
+            merge(start, mid, end);
         }
-        swap(arr, end, i + 1);
-        return i + 1;
-    }
 
+        private void sort(int from, int to) {
+            if (to - from < 2) return;
+            int mid = (from + to) >>> 1;
+            sort(from, mid);
+            sort(mid, to);
+            merge(from, mid, to);
+        }
 
-    /**
-     * Quick sort algorithm used by weightedCondorcetFuse
-     *
-     * @param arr      array to sort
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
-     */
-    private static void quickSortWeighted(String[] arr, TopicResult[][] data, HashMap<String, HashMap<Integer, Double>> docRanks, int topic) {
-        quickWeighted(arr, 0, arr.length - 1, data, docRanks, topic);
+        /**
+         * Merge the sorted ranges [from, mid) and [mid, to)
+         */
+        private void merge(int from, int mid, int to) {
+            System.arraycopy(arr, from, aux, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                //take from the right range only if it beats the left one, so the sort is stable
+                if (j < to && (i >= mid || comparator.compare(aux[j], aux[i]) > 0)) {
+                    arr[k] = aux[j++];
+                } else {
+                    arr[k] = aux[i++];
+                }
+            }
+        }
     }
 
     /**
-     * Util function for quick sort used by weightedCondorcetFuse
-     *
-     * @param arr      array to sort
-     * @param start    start index
-     * @param end      end index
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
+     * State of the No Random Access algorithm used by topK on the blocks of a single topic
      */
-    private static void quickWeighted(String[] arr, int start, int end, TopicResult[][] data, HashMap<String, HashMap<Integer, Double>> docRanks, int topic) {
-        if (start < end) {
-            int pivot = partitionWeighted(arr, start, end, data, docRanks, topic);
-            quickWeighted(arr, start, pivot - 1, data, docRanks, topic);
-            quickWeighted(arr, pivot + 1, end, data, docRanks, topic);
+    private static class TopKTopic {
+        //relative margin required between two bounds, larger than the rounding errors of the partial sums
+        private static final double BOUND_MARGIN = 1e-12;
+        //ratio between two consecutive depths at which the stop test is done
+        private static final double CHECK_GROWTH = 1.25;
+
+        private final TopicResult[] blocks;
+        private final CombMethod method;
+        private final int k;
+        private final int nRuns;
+        //minimum score of each block and score of the last row read from it
+        private final double[] minScore;
+        private final double[] lastScore;
+        //next row to read of each block
+        private final int[] next;
+
+        //documents read so far: doc --> slot, in order of reading
+        private final DocIndex slots = new DocIndex();
+        private int nSlots;
+        private int[] docs = new int[16];
+        //number of runs, sum and max of the scores found so far
+        private int[] count = new int[16];
+        private double[] sum = new double[16];
+        private double[] max = new double[16];
+        //run and row of the first appearance of the document in the run order of the Fusion methods
+        private long[] first = new long[16];
+        //score of each document in each run, present[slot * nRuns + run] = true if found
+        private double[] scores;
+        private boolean[] present;
+        private int topicNumber = -1;
+
+        private TopKTopic(TopicResult[] blocks, CombMethod method, int k) {
+            this.blocks = blocks;
+            this.method = method;
+            this.k = k;
+            nRuns = blocks.length;
+            minScore = new double[nRuns];
+            lastScore = new double[nRuns];
+            next = new int[nRuns];
+            scores = new double[16 * nRuns];
+            present = new boolean[16 * nRuns];
         }
-    }
 
-    /**
-     * Util function for quick sort, partition the elements around a pivot
-     *
-     * @param arr      array
-     * @param start    start index
-     * @param end      end index
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
-     * @return index of the pivot
-     */
-    private static int partitionWeighted(String[] arr, int start, int end, TopicResult[][] data, HashMap<String, HashMap<Integer, Double>> docRanks, int topic) {
-        int pivotIndex = start + (int) (Math.random() * (end - start + 1));
-        String pivot = arr[pivotIndex];
-        swap(arr, pivotIndex, end);
-        int i = start - 1;
-        for (int j = start; j < end - 1; j++) {
-            if (compareDocumentsWithWeights(data, docRanks, topic, arr[j], pivot) > 0) {
-                i++;
-                swap(arr, i, j);
+        /**
+         * Compute the first k documents of the topic
+         *
+         * @param topic index of the topic
+         * @return TopicResult of the topic
+         */
+        private TopicResult fuse(int topic) {
+            TopicResult topKResult = new TopicResult(topic);
+            if (k == 0) return topKResult;
+            int maxDepth = 0;
+            for (int run = 0; run < nRuns; run++) {
+                TopicResult block = blocks[run];
+                block.sortRows();
+                maxDepth = Math.max(maxDepth, block.size());
+                if (block.size() > 0) minScore[run] = block.getScore(block.size() - 1);
             }
-        }
-        swap(arr, end, i + 1);
-        return i + 1;
-    }
 
-    /**
-     * Util function for quick sort, swap two element of an array
-     *
-     * @param arr array
-     * @param i1  index 1
-     * @param i2  index 2
-     */
-    private static void swap(String[] arr, int i1, int i2) {
-        String temp = arr[i1];
-        arr[i1] = arr[i2];
-        arr[i2] = temp;
-    }
+            //sorted access to all the blocks, one row at a time, until the first k documents are known
+            int[] candidates = null;
+            int nextCheck = 1;
+            for (int depth = 0; depth < maxDepth && candidates == null; depth++) {
+                for (int run = 0; run < nRuns; run++) {
+                    if (depth >= blocks[run].size()) continue;
+                    int slot = slots.get(blocks[run].getDoc(depth));
+                    if (slot == -1) slot = addSlot(blocks[run].getDoc(depth));
+                    found(slot, run, depth);
+                    lastScore[run] = blocks[run].getScore(depth);
+                    next[run] = depth + 1;
+                }
+                //the stop test costs as much as the rows read so far: the depths tested grow geometrically
+                if (depth + 1 >= nextCheck) {
+                    candidates = stopCandidates();
+                    nextCheck = Math.max(depth + 2, (int) ((depth + 1) * CHECK_GROWTH));
+                }
+            }
+            if (candidates == null) {
+                //all the rows have been read, every score is known
+                candidates = new int[nSlots];
+                for (int slot = 0; slot < nSlots; slot++) candidates[slot] = slot;
+            } else {
+                completeScores(candidates);
+            }
 
-    /**
-     * Merge sort algorithm
-     *
-     * @param arr      array to sort
-     * @param start    start index
-     * @param end      end index
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
-     */
-    private static void mergeSort(String[] arr, int start, int end, TopicResult[][] data, HashMap<String, HashMap<Integer, Integer>> docRanks, int topic) {
-        if (start < end) {
-            int mid = (start + end) / 2;
-            mergeSort(arr, start, mid, data, docRanks, topic);
-            mergeSort(arr, mid + 1, end, data, docRanks, topic);
-            merge(arr, start, mid, end, data, docRanks, topic);
+            //exact fused scores, adding the scores in the run order of the Fusion methods
+            double[] fused = new double[nSlots];
+            for (int slot : candidates) {
+                double score = 0;
+                int n = 0;
+                for (int run = 0; run < nRuns; run++) {
+                    if (!present[slot * nRuns + run]) continue;
+                    double s = scores[slot * nRuns + run];
+                    if (n == 0) {
+                        score = s;
+                    } else if (method == CombMethod.MAX) {
+                        score = Math.max(score, s);
+                    } else {
+                        score = score + s;
+                    }
+                    n++;
+                }
+                fused[slot] = method == CombMethod.MNZ ? score * n : score;
+            }
+
+            //sort by score, then by first appearance as in the Fusion methods
+            Integer[] order = new Integer[candidates.length];
+            for (int i = 0; i < candidates.length; i++) order[i] = candidates[i];
+            Arrays.sort(order, (a, b) -> {
+                int c = Double.compare(fused[b], fused[a]);
+                return c != 0 ? c : Long.compare(first[a], first[b]);
+            });
+            for (int i = 0; i < Math.min(k, order.length); i++) {
+                topKResult.appendRow(topicNumber, docs[order[i]], i, fused[order[i]], -1);
+            }
+            topKResult.computeRanking();
+            return topKResult;
         }
-    }
 
-    /**
-     * Util function for merge sort, merge two sub array
-     *
-     * @param arr      array to
-     * @param start    start index
-     * @param end      end index
-     * @param data     Data structure containing the raw data of the runs
-     * @param docRanks Data structure containing the ranking positions for each documents
-     * @param topic    identifier for the current topic
-     */
-    private static void merge(String[] arr, int start, int end, int high, TopicResult[][] data, HashMap<String, HashMap<Integer, Integer>> docRanks, int topic) {
-        int i1 = start;
-        int i2 = end + 1;
-        int i = 0;
-        String temp[] = new String[high - start + 1];
-        while (i1 <= end && i2 <= high) {
-            if (compareDocuments(data, docRanks, topic, arr[i1], arr[i2]) > 0) {
-                temp[i++] = arr[i1++];
+        /**
+         * Check if the reading can stop: the k documents with the best lower bounds must beat the upper bounds of
+         * all the other documents, including the ones not read yet
+         *
+         * @return slots of the k documents, null if the reading must go on
+         */
+        private int[] stopCandidates() {
+            int active = 0;
+            double positive = 0;
+            double negative = 0;
+            double highest = Double.NEGATIVE_INFINITY;
+            for (int run = 0; run < nRuns; run++) {
+                if (next[run] >= blocks[run].size()) continue;
+                active++;
+                positive += Math.max(lastScore[run], 0);
+                negative += Math.min(minScore[run], 0);
+                highest = Math.max(highest, lastScore[run]);
+            }
+            if (active == 0 || nSlots < k) return null;
+            //best score of a document not read yet
+            double unseenUpper;
+            if (method == CombMethod.SUM) {
+                unseenUpper = positive;
+            } else if (method == CombMethod.MAX) {
+                unseenUpper = highest;
             } else {
-                temp[i++] = arr[i2++];
+                unseenUpper = product(negative, positive, 1, active, true);
+            }
+
+            //fast test with the bounds of the unknown scores taken over all the active runs
+            double[] heap = new double[k];
+            int n = 0;
+            for (int slot = 0; slot < nSlots; slot++) {
+                double lower;
+                if (method == CombMethod.SUM) {
+                    lower = sum[slot] + negative;
+                } else if (method == CombMethod.MAX) {
+                    lower = max[slot];
+                } else {
+                    lower = product(sum[slot] + negative, sum[slot] + positive, count[slot], count[slot] + active, false);
+                }
+                n = heapOffer(heap, n, lower);
+            }
+            if (!beats(heap[0], unseenUpper)) return null;
+
+            //exact bounds, with the unknown scores taken only over the runs where the document has not been found
+            double[] lower = new double[nSlots];
+            double[] upper = new double[nSlots];
+            n = 0;
+            for (int slot = 0; slot < nSlots; slot++) {
+                double sumLower = sum[slot];
+                double sumUpper = sum[slot];
+                double maxUpper = max[slot];
+                int unknown = 0;
+                for (int run = 0; run < nRuns; run++) {
+                    if (present[slot * nRuns + run] || next[run] >= blocks[run].size()) continue;
+                    unknown++;
+                    sumLower += Math.min(minScore[run], 0);
+                    sumUpper += Math.max(lastScore[run], 0);
+                    maxUpper = Math.max(maxUpper, lastScore[run]);
+                }
+                if (method == CombMethod.SUM) {
+                    lower[slot] = sumLower;
+                    upper[slot] = sumUpper;
+                } else if (method == CombMethod.MAX) {
+                    lower[slot] = max[slot];
+                    upper[slot] = maxUpper;
+                } else {
+                    lower[slot] = product(sumLower, sumUpper, count[slot], count[slot] + unknown, false);
+                    upper[slot] = product(sumLower, sumUpper, count[slot], count[slot] + unknown, true);
+                }
+                n = heapOffer(heap, n, lower[slot]);
+            }
+            double kth = heap[0];
+            if (!beats(kth, unseenUpper)) return null;
+            int[] candidates = new int[k];
+            int nCandidates = 0;
+            for (int slot = 0; slot < nSlots; slot++) {
+                if (Double.compare(lower[slot], kth) >= 0) {
+                    //more than k documents with the k-th lower bound: not separable yet
+                    if (nCandidates == k) return null;
+                    candidates[nCandidates++] = slot;
+                } else if (!beats(kth, upper[slot])) {
+                    return null;
+                }
+            }
+            return candidates;
+        }
+
+        /**
+         * Read on the blocks where the score of a candidate is unknown, until all its scores are found or the
+         * block ends
+         *
+         * @param candidates slots of the documents
+         */
+        private void completeScores(int[] candidates) {
+            boolean[] candidate = new boolean[nSlots];
+            for (int slot : candidates) candidate[slot] = true;
+            for (int run = 0; run < nRuns; run++) {
+                TopicResult block = blocks[run];
+                int missing = 0;
+                for (int slot : candidates) {
+                    if (!present[slot * nRuns + run]) missing++;
+                }
+                while (missing > 0 && next[run] < block.size()) {
+                    int row = next[run]++;
+                    int slot = slots.get(block.getDoc(row));
+                    if (slot != -1 && candidate[slot] && !present[slot * nRuns + run]) {
+                        found(slot, run, row);
+                        missing--;
+                    }
+                }
             }
         }
-        while (i1 <= end) {
-            temp[i++] = arr[i1++];
+
+        /**
+         * Add a document read for the first time
+         *
+         * @param doc doc id
+         * @return slot of the document
+         */
+        private int addSlot(int doc) {
+            if (nSlots == docs.length) {
+                docs = Arrays.copyOf(docs, 2 * nSlots);
+                count = Arrays.copyOf(count, 2 * nSlots);
+                sum = Arrays.copyOf(sum, 2 * nSlots);
+                max = Arrays.copyOf(max, 2 * nSlots);
+                first = Arrays.copyOf(first, 2 * nSlots);
+                scores = Arrays.copyOf(scores, 2 * nSlots * nRuns);
+                present = Arrays.copyOf(present, 2 * nSlots * nRuns);
+            }
+            slots.put(doc, nSlots);
+            docs[nSlots] = doc;
+            first[nSlots] = Long.MAX_VALUE;
+            return nSlots++;
         }
-        while (i2 <= high) {
-            temp[i++] = arr[i2++];
+
+        /**
+         * Record the score of a document in a run; only the first row of the document in the run is counted
+         *
+         * @param slot slot of the document
+         * @param run  index of the run
+         * @param row  row of the document in the block of the run
+         */
+        private void found(int slot, int run, int row) {
+            if (present[slot * nRuns + run]) return;
+            double score = blocks[run].getScore(row);
+            present[slot * nRuns + run] = true;
+            scores[slot * nRuns + run] = score;
+            sum[slot] = count[slot] == 0 ? score : sum[slot] + score;
+            max[slot] = count[slot] == 0 ? score : Math.max(max[slot], score);
+            count[slot]++;
+            first[slot] = Math.min(first[slot], ((long) run << 32) | row);
+            topicNumber = blocks[run].getTopic(row);
         }
-        System.arraycopy(temp, 0, arr, start, temp.length);
-    }
 
-    /**
-     * Utility test function used to randomize a given array
-     *
-     * @param a array to randomize
-     */
-    private static void randomizeArray(String[] a) {
-        String temp;
-        Random r = new Random(System.currentTimeMillis());
-        for (int i = 0; i < a.length; i++) {
-            int index = r.nextInt(a.length);
-            System.out.println(index);
-            temp = a[index];
-            a[index] = a[i];
-            a[i] = temp;
+        /**
+         * Bound of the product of a sum and a count, both known within a range, as in combMnz
+         *
+         * @param sumLower   lower bound of the sum
+         * @param sumUpper   upper bound of the sum
+         * @param countLower lower bound of the count
+         * @param countUpper upper bound of the count
+         * @param upper      true for the upper bound, false for the lower one
+         * @return bound of the product
+         */
+        private static double product(double sumLower, double sumUpper, int countLower, int countUpper, boolean upper) {
+            double a = sumLower * countLower;
+            double b = sumLower * countUpper;
+            double c = sumUpper * countLower;
+            double d = sumUpper * countUpper;
+            return upper ? Math.max(Math.max(a, b), Math.max(c, d)) : Math.min(Math.min(a, b), Math.min(c, d));
         }
-    }
 
+        /**
+         * Check if a lower bound is surely greater than an upper bound, despite the rounding errors of the sums
+         */
+        private static boolean beats(double lower, double upper) {
+            return upper == Double.NEGATIVE_INFINITY || lower - upper > BOUND_MARGIN * (Math.abs(lower) + Math.abs(upper));
+        }
+    }
 }
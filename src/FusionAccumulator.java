@@ -0,0 +1,168 @@
+import java.util.Arrays;
+
+/**
+ * Incremental implementation of the combSum, combAnz and combMnz rankFusion algorithms.
+ * For every topic the accumulator keeps the sum and the number of the scores of each document in the runs added so
+ * far; a run can be added or removed in time proportional to its size, and the rankings are computed on demand.
+ * <p>
+ * The scores are the same of the corresponding Fusion methods, apart from rounding errors left in the sums by
+ * removed runs. Documents with the same score are ranked in the order in which they entered the accumulator.
+ */
+public class FusionAccumulator {
+    private final TopicResult[][] data;
+    private final boolean[] added;
+    private final TopicSums[] topics;
+    private int nRuns;
+
+    /**
+     * Create an accumulator without runs
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     */
+    public FusionAccumulator(TopicResult[][] data) {
+        this.data = data;
+        added = new boolean[data.length == 0 ? 0 : data[0].length];
+        topics = new TopicSums[data.length];
+        for (int topic = 0; topic < data.length; topic++) {
+            topics[topic] = new TopicSums();
+        }
+    }
+
+    /**
+     * Add the scores of a run
+     *
+     * @param run index of the run in the data matrix
+     * @throws IllegalStateException if the run has already been added
+     */
+    public void addRun(int run) {
+        if (added[run]) throw new IllegalStateException("Run " + run + " already added");
+        for (int topic = 0; topic < data.length; topic++) {
+            TopicResult block = data[topic][run];
+            for (int i = 0; i < block.size(); i++) {
+                topics[topic].add(block.getTopic(i), block.getDoc(i), block.getScore(i));
+            }
+        }
+        added[run] = true;
+        nRuns++;
+    }
+
+    /**
+     * Remove the scores of a run
+     *
+     * @param run index of the run in the data matrix
+     * @throws IllegalStateException if the run has not been added
+     */
+    public void removeRun(int run) {
+        if (!added[run]) throw new IllegalStateException("Run " + run + " not added");
+        for (int topic = 0; topic < data.length; topic++) {
+            TopicResult block = data[topic][run];
+            for (int i = 0; i < block.size(); i++) {
+                topics[topic].remove(block.getDoc(i), block.getScore(i));
+            }
+        }
+        added[run] = false;
+        nRuns--;
+    }
+
+    /**
+     * check if a run has been added
+     *
+     * @param run index of the run in the data matrix
+     * @return true if the run has been added
+     */
+    public boolean containsRun(int run) {
+        return added[run];
+    }
+
+    /**
+     * get the number of runs added
+     *
+     * @return number of runs
+     */
+    public int getRunCount() {
+        return nRuns;
+    }
+
+    /**
+     * Returns the rankings of the runs added so far
+     *
+     * @param method fusion method, one of SUM, ANZ and MNZ
+     * @return array of TopicResult, one for each topic
+     */
+    public TopicResult[] getResult(CombMethod method) {
+        TopicResult[] result = new TopicResult[data.length];
+        for (int topic = 0; topic < data.length; topic++) {
+            result[topic] = getResult(method, topic);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ranking of a topic for the runs added so far
+     *
+     * @param method fusion method, one of SUM, ANZ and MNZ
+     * @param topic  index of the topic
+     * @return ranked documents
+     */
+    public TopicResult getResult(CombMethod method, int topic) {
+        if (method != CombMethod.SUM && method != CombMethod.ANZ && method != CombMethod.MNZ) {
+            throw new IllegalArgumentException("Incremental fusion is not supported for " + method);
+        }
+        TopicSums sums = topics[topic];
+        TopicResult result = new TopicResult(topic);
+        for (int slot = 0; slot < sums.nDocs; slot++) {
+            int count = sums.count[slot];
+            if (count == 0) continue;
+            double score;
+            if (method == CombMethod.SUM) {
+                score = sums.sum[slot];
+            } else if (method == CombMethod.ANZ) {
+                score = sums.sum[slot] / count;
+            } else {
+                score = sums.sum[slot] * count;
+            }
+            result.appendRow(sums.topicNumber, sums.docs[slot], result.size(), score, -1);
+        }
+        //Sort results based on the scores
+        result.computeRanking();
+        return result;
+    }
+
+    /**
+     * Sums and counts of the scores of the documents of a topic
+     */
+    private static class TopicSums {
+        //doc --> position of the document in the arrays, in order of first appearance
+        private final DocIndex slots = new DocIndex();
+        private int nDocs;
+        private int topicNumber;
+        private int[] docs = new int[16];
+        private int[] count = new int[16];
+        private double[] sum = new double[16];
+
+        private void add(int topic, int doc, double score) {
+            int slot = slots.get(doc);
+            if (slot == -1) {
+                if (nDocs == docs.length) {
+                    docs = Arrays.copyOf(docs, 2 * nDocs);
+                    count = Arrays.copyOf(count, 2 * nDocs);
+                    sum = Arrays.copyOf(sum, 2 * nDocs);
+                }
+                slot = nDocs++;
+                slots.put(doc, slot);
+                docs[slot] = doc;
+                topicNumber = topic;
+            }
+            //the first score is assigned, not added, as in the Fusion methods
+            sum[slot] = count[slot] == 0 ? score : sum[slot] + score;
+            count[slot]++;
+        }
+
+        private void remove(int doc, double score) {
+            int slot = slots.get(doc);
+            count[slot]--;
+            //reset the sum of a document without scores, so that no rounding error is left
+            sum[slot] = count[slot] == 0 ? 0 : sum[slot] - score;
+        }
+    }
+}
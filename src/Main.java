@@ -4,7 +4,7 @@ import java.io.IOException;
 
 public class Main {
     public static void main(String[] args) {
-        Parser p = new Parser("TREC7", ".res", 351, 50);
+        Parser p = new Parser("TREC7", ".res", 351, 50, true);
         System.out.println("Getting data...");
         TopicResult[][] data = p.getTopicList();
         System.out.println("Normalizing data...");
@@ -16,35 +16,32 @@ public class Main {
         //printData(normData);
 
         /*System.out.println("Execution of rank fusion algorithms...");
+        //all the CombX methods in a single pass, normalizing the scores while fusing them
+        EnumMap<CombMethod, TopicResult[]> comb = CombEngine.fuse(data, NormMethod.SUM);
+
         //comb min
         System.out.println("combMIN");
-        //printResults(Fusion.combMin(normData));
-        printResultsToFile(Fusion.combMin(normData), "combMIN");
+        printResultsToFile(comb.get(CombMethod.MIN), "combMIN");
 
         //comb max
         System.out.println("combMAX");
-        //printResults(Fusion.combMax(normData));
-        printResultsToFile(Fusion.combMax(normData), "combMAX");
+        printResultsToFile(comb.get(CombMethod.MAX), "combMAX");
 
         //comb sum
         System.out.println("combSUM");
-        //printResults(Fusion.combSum(normData));
-        printResultsToFile(Fusion.combSum(normData), "combSUM");
+        printResultsToFile(comb.get(CombMethod.SUM), "combSUM");
 
         //comb anz
         System.out.println("combANZ");
-        //printResults(Fusion.combAnz(normData));
-        printResultsToFile(Fusion.combAnz(normData), "combANZ");
+        printResultsToFile(comb.get(CombMethod.ANZ), "combANZ");
 
         //comb mnz
         System.out.println("combMNZ");
-        //printResults(Fusion.combMnz(normData));
-        printResultsToFile(Fusion.combMnz(normData), "combMNZ");
+        printResultsToFile(comb.get(CombMethod.MNZ), "combMNZ");
 
         //comb med
         System.out.println("combMED");
-        //printResults(Fusion.combMed(normData));
-        printResultsToFile(Fusion.combMed(normData), "combMED");
+        printResultsToFile(comb.get(CombMethod.MED), "combMED");
 */
         //condorcet fuse
         System.out.println("condorcetFuse");
@@ -1,6 +1,7 @@
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.EnumMap;
 
 public class MainAutomated {
     public static void main(String[] args) {
@@ -8,29 +9,32 @@ public class MainAutomated {
         for (int nDoc = 2; nDoc <= 12; nDoc++) {
             for (int iteration = 0; iteration < 20; iteration++) {
                 String folder = "TREC7";
-                Parser p = new Parser(folder, ".res", 351, 50, nDoc);
+                Parser p = new Parser(folder, ".res", 351, 50, nDoc, true);
                 TopicResult[][] data = p.getTopicList();
                 TopicResult[][] normData = Normalization.SumNorm(data);
 
                 System.out.println(folder + " nDoc:" + nDoc + " iteration:" + iteration);
 
+                //all the CombX methods in a single pass, normalizing the scores while fusing them
+                EnumMap<CombMethod, TopicResult[]> comb = CombEngine.fuse(data, NormMethod.SUM);
+
                 //comb min
-                printResultsToFile(Fusion.combMin(normData), folder + "_" + nDoc + "_" + "combMIN" + "_" + iteration);
+                printResultsToFile(comb.get(CombMethod.MIN), folder + "_" + nDoc + "_" + "combMIN" + "_" + iteration);
 
                 //comb max
-                printResultsToFile(Fusion.combMax(normData), folder + "_" + nDoc + "_" + "combMAX" + "_" + iteration);
+                printResultsToFile(comb.get(CombMethod.MAX), folder + "_" + nDoc + "_" + "combMAX" + "_" + iteration);
 
                 //comb sum
-                printResultsToFile(Fusion.combSum(normData), folder + "_" + nDoc + "_" + "combSUM" + "_" + iteration);
+                printResultsToFile(comb.get(CombMethod.SUM), folder + "_" + nDoc + "_" + "combSUM" + "_" + iteration);
 
                 //comb anz
-                printResultsToFile(Fusion.combAnz(normData), folder + "_" + nDoc + "_" + "combANZ" + "_" + iteration);
+                printResultsToFile(comb.get(CombMethod.ANZ), folder + "_" + nDoc + "_" + "combANZ" + "_" + iteration);
 
                 //comb mnz
-                printResultsToFile(Fusion.combMnz(normData), folder + "_" + nDoc + "_" + "combMNZ" + "_" + iteration);
+                printResultsToFile(comb.get(CombMethod.MNZ), folder + "_" + nDoc + "_" + "combMNZ" + "_" + iteration);
 
                 //comb med
-                printResultsToFile(Fusion.combMed(normData), folder + "_" + nDoc + "_" + "combMED" + "_" + iteration);
+                printResultsToFile(comb.get(CombMethod.MED), folder + "_" + nDoc + "_" + "combMED" + "_" + iteration);
 
                 //condorcet fuse
                 printResultsToFile(Fusion.condorcetFuse(normData), folder + "_" + nDoc + "_" + "condorcetFuse" + "_" + iteration);
@@ -0,0 +1,87 @@
+/**
+ * Median of a range of values, found by selection in linear time instead of sorting the values
+ */
+public class Median {
+    //ranges smaller than this are sorted by insertion sort
+    private static final int INSERTION_THRESHOLD = 16;
+
+    private Median() {
+    }
+
+    /**
+     * Returns the median of a range of values: the middle value if the number of values is odd, the mean of the two
+     * middle values if it is even. The values in the range are reordered
+     *
+     * @param values array containing the values
+     * @param from   first index (inclusive)
+     * @param to     last index (exclusive)
+     * @return median of the values
+     */
+    public static double median(double[] values, int from, int to) {
+        int n = to - from;
+        if (n <= 0) throw new IllegalArgumentException("Median of an empty range");
+        int upper = from + n / 2;
+        select(values, from, to - 1, upper);
+        if (n % 2 == 1) return values[upper];
+        //after the selection the values before the upper middle one are not greater than it
+        double lower = values[from];
+        for (int i = from + 1; i < upper; i++) {
+            if (values[i] > lower) lower = values[i];
+        }
+        return (lower + values[upper]) / 2;
+    }
+
+    /**
+     * Util function for median, move the k-th smallest value of a range to position k, with the smaller values
+     * before it and the greater ones after it (quickselect with median of three pivot)
+     *
+     * @param a     array
+     * @param left  first index (inclusive)
+     * @param right last index (inclusive)
+     * @param k     index of the value to select
+     */
+    private static void select(double[] a, int left, int right, int k) {
+        while (right - left >= INSERTION_THRESHOLD) {
+            int mid = (left + right) >>> 1;
+            if (a[mid] < a[left]) swap(a, left, mid);
+            if (a[right] < a[left]) swap(a, left, right);
+            if (a[right] < a[mid]) swap(a, mid, right);
+            double pivot = a[mid];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            //[left, j] <= pivot, [i, right] >= pivot, the values between j and i are equal to the pivot
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+        //insertion sort of the remaining range
+        for (int i = left + 1; i <= right; i++) {
+            double value = a[i];
+            int j = i - 1;
+            while (j >= left && a[j] > value) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = value;
+        }
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double temp = a[i];
+        a[i] = a[j];
+        a[j] = temp;
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Random;
+
+/**
+ * Benchmark of the sum normalization of the scores on a synthetic collection with many runs.
+ * Three implementations are compared, each producing and reading all the normalized scores:
+ * the original Normalization.SumNorm (a copy of the data normalized row by row with getScore/setScore, reproduced
+ * below as it was), the normalized views read row by row with getScore (the implementation before the
+ * ScoreKernels), and the normalized views read in bulk with getScores through the ScoreKernels loops.
+ * Usage: NormBenchmark [runs] [topics] [documents per block]
+ */
+public class NormBenchmark {
+    public static void main(String[] args) {
+        int nRuns = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        int nTopics = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int nDocs = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        //blocks of random scores, sorted by descending score as in the input runs
+        Random random = new Random(42);
+        TopicResult[][] data = new TopicResult[nTopics][nRuns];
+        for (int topic = 0; topic < nTopics; topic++) {
+            for (int run = 0; run < nRuns; run++) {
+                data[topic][run] = new TopicResult(run, topic);
+                double score = 100 * random.nextDouble();
+                for (int i = 0; i < nDocs; i++) {
+                    data[topic][run].appendRow(topic, random.nextInt(10 * nDocs), i, score, run);
+                    score -= random.nextDouble() / nDocs;
+                }
+            }
+        }
+        System.out.println(nRuns + " runs, " + nTopics + " topics, " + nDocs + " documents per block");
+
+        double[] buffer = new double[nDocs];
+        double check = 0;
+        for (int iteration = 0; iteration < 10; iteration++) {
+            long start = System.nanoTime();
+            //original implementation: normalized copy, read row by row
+            TopicResult[][] copies = originalSumNorm(data);
+            for (int topic = 0; topic < nTopics; topic++) {
+                for (int run = 0; run < nRuns; run++) {
+                    TopicResult block = copies[topic][run];
+                    for (int i = 0; i < block.size(); i++) {
+                        check += block.getScore(i);
+                    }
+                }
+            }
+            long original = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            //views of the blocks, read row by row
+            TopicResult[][] views = Normalization.SumNorm(data);
+            for (int topic = 0; topic < nTopics; topic++) {
+                for (int run = 0; run < nRuns; run++) {
+                    TopicResult block = views[topic][run];
+                    for (int i = 0; i < block.size(); i++) {
+                        check += block.getScore(i);
+                    }
+                }
+            }
+            long rowByRow = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            //views of the blocks, read in bulk
+            TopicResult[][] normData = Normalization.SumNorm(data);
+            for (int topic = 0; topic < nTopics; topic++) {
+                for (int run = 0; run < nRuns; run++) {
+                    TopicResult block = normData[topic][run];
+                    block.getScores(buffer, 0);
+                    for (int i = 0; i < block.size(); i++) {
+                        check += buffer[i];
+                    }
+                }
+            }
+            long kernels = System.nanoTime() - start;
+
+            System.out.printf("iteration %d: original %d ms, views + getScore %d ms, views + kernels %d ms%n",
+                    iteration, original / 1000000, rowByRow / 1000000, kernels / 1000000);
+        }
+        //print the checksum, so that the loops are not removed as dead code
+        System.out.println("checksum " + check);
+    }
+
+    /**
+     * The original Normalization.SumNorm: shift min to 0, scale sum to 1, on a copy of the data
+     *
+     * @param data data to normalize
+     * @return matrix of TopicResult containing the data with the normalized scores
+     */
+    private static TopicResult[][] originalSumNorm(TopicResult[][] data) {
+        //create a copy of the input, for not working with original data
+        TopicResult[][] datacopy = Parser.getDataCopy(data);
+        for (int topic = 0; topic < datacopy.length; topic++) {
+            for (int run = 0; run < datacopy[topic].length; run++) {
+                //for each TopicResult, if is non empty find min score and max score
+                if (datacopy[topic][run].size() != 0) {
+                    TopicResult tr = datacopy[topic][run];
+                    tr.sortRows();
+                    double min = tr.getScore(tr.size() - 1);
+                    double max = tr.getScore(0);
+                    double sum = 0;
+                    for (int i = 0; i < tr.size(); i++) {
+                        sum += tr.getScore(i);
+                    }
+                    sum = sum - (min * tr.size());
+                    //for each row, new_score=(old_score-min_score)/(sum)
+                    for (int i = 0; i < tr.size(); i++) {
+                        //Prevent division by zero
+                        if (min == max) {
+                            tr.setScore(i, 1.0);
+                        } else {
+                            tr.setScore(i, (tr.getScore(i) - min) / sum);
+                        }
+                    }
+                }
+            }
+        }
+        return datacopy;
+    }
+}
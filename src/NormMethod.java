@@ -0,0 +1,17 @@
+/**
+ * Normalization methods of the scores of a block of a run, see Normalization
+ */
+public enum NormMethod {
+    /**
+     * shift min to 0, scale max to 1
+     */
+    MIN_MAX,
+    /**
+     * shift min to 0, scale sum to 1
+     */
+    SUM,
+    /**
+     * shift mean to 0, scale by the square root of the sum of the squared deviations
+     */
+    Z
+}
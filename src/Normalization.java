@@ -1,7 +1,10 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
- * class containing static method to normalize the scores of the runs using different techniques
+ * class containing static method to normalize the scores of the runs using different techniques.
+ * The normalized blocks are views of the input blocks (see TopicResult.normalizedView): the rows are not copied,
+ * the normalized scores are computed when they are read
  */
 public class Normalization {
     /**
@@ -12,26 +15,19 @@ public class Normalization {
      * TopicResult[topic][run]
      */
     public static TopicResult[][] MinMaxNorm(TopicResult[][] data) {
-        //create a copy of the input, for not working with original data
-        TopicResult[][] dataCopy = Parser.getDataCopy(data);
-        for (int topic = 0; topic < dataCopy.length; topic++) {
-            for (int run = 0; run < dataCopy[topic].length; run++) {
-                //for each TopicResult, if is non empty find min score and max score
-                if (dataCopy[topic][run].size() != 0) {
-                    double[] minMax = getMinMax(dataCopy[topic][run]);
-                    //for each row, new_score=(old_score-min_score)/(max_score-min_score)
-                    for (int i = 0; i < dataCopy[topic][run].size(); i++) {
-                        //Prevent division by zero
-                        if (minMax[0] == minMax[1]) {
-                            dataCopy[topic][run].setScore(i, 1.0);
-                        } else {
-                            dataCopy[topic][run].setScore(i, (dataCopy[topic][run].getScore(i) - minMax[0]) / (minMax[1] - minMax[0]));
-                        }
-                    }
-                }
-            }
-        }
-        return dataCopy;
+        return normalize(data, NormMethod.MIN_MAX);
+    }
+
+    /**
+     * Returns the data normalized with the standard max-min norm: shift min to 0, scale max to 1
+     *
+     * @param data data to normalize
+     * @param parallel if true the blocks are normalized in parallel
+     * @return matrix of TopicResult containing the data with the normalized scores. The output matrix has the format
+     * TopicResult[topic][run]
+     */
+    public static TopicResult[][] MinMaxNorm(TopicResult[][] data, boolean parallel) {
+        return normalize(data, NormMethod.MIN_MAX, parallel);
     }
 
     /**
@@ -42,28 +38,19 @@ public class Normalization {
      * TopicResult[topic][run]
      */
     public static TopicResult[][] SumNorm(TopicResult[][] data) {
-        //create a copy of the input, for not working with original data
-        TopicResult[][] datacopy = Parser.getDataCopy(data);
-        for (int topic = 0; topic < datacopy.length; topic++) {
-            for (int run = 0; run < datacopy[topic].length; run++) {
-                //for each TopicResult, if is non empty find min score and max score
-                if (datacopy[topic][run].size() != 0) {
-                    double[] minmax = getMinMax(datacopy[topic][run]);
-                    double sum = computeSum(datacopy[topic][run]);
-                    sum = sum - (minmax[0] * datacopy[topic][run].size());
-                    //for each row, new_score=(old_score-min_score)/(sum)
-                    for (int i = 0; i < datacopy[topic][run].size(); i++) {
-                        //Prevent division by zero
-                        if (minmax[0] == minmax[1]) {
-                            datacopy[topic][run].setScore(i, 1.0);
-                        } else {
-                            datacopy[topic][run].setScore(i, (datacopy[topic][run].getScore(i) - minmax[0]) / sum);
-                        }
-                    }
-                }
-            }
-        }
-        return datacopy;
+        return normalize(data, NormMethod.SUM);
+    }
+
+    /**
+     * Returns the data normalized with the sum norm: shift min to 0, scale sum to 1
+     *
+     * @param data data to normalize
+     * @param parallel if true the blocks are normalized in parallel
+     * @return matrix of TopicResult containing the data with the normalized scores. The output matrix has the format
+     * TopicResult[topic][run]
+     */
+    public static TopicResult[][] SumNorm(TopicResult[][] data, boolean parallel) {
+        return normalize(data, NormMethod.SUM, parallel);
     }
 
     /**
@@ -74,73 +61,95 @@ public class Normalization {
      * TopicResult[topic][run]
      */
     public static TopicResult[][] ZNorm(TopicResult[][] data) {
-        //create a copy of the input, for not working with original data
-        TopicResult[][] datacopy = Parser.getDataCopy(data);
-        for (int topic = 0; topic < datacopy.length; topic++) {
-            for (int run = 0; run < datacopy[topic].length; run++) {
-                //get array of scores
-                int blockSize = datacopy[topic][run].size();
-                double[] scores = getScores(datacopy[topic][run]);
-                double scoreSum = computeSum(datacopy[topic][run]);
-                double averageScore = scoreSum / blockSize;
-                double[] zNormalizedScores = new double[blockSize];
-                double scoreVariance = 0;
-                for (double s : scores) {
-                    scoreVariance += Math.pow((s - averageScore), 2);
-                }
-                for (int i = 0; i < blockSize; i++) {
-                    zNormalizedScores[i] = (scores[i] - averageScore) / Math.sqrt(scoreVariance);
-                    datacopy[topic][run].setScore(i, zNormalizedScores[i]);
-                }
-            }
-        }
-
-        return datacopy;
+        return normalize(data, NormMethod.Z);
     }
 
     /**
-     * Util method used for normalization.
-     * Returns the max and the min score of a TopicResult
+     * Returns the data normalized with the sum norm: shift mean to 0, scale variance to 1
      *
-     * @param tr TopicResult to process
-     * @return array containing the max and the min scores of the given TopicResults
-     * array[0] = min, array[1] = max
+     * @param data data to normalize
+     * @param parallel if true the blocks are normalized in parallel
+     * @return matrix of TopicResult containing the data with the normalized scores. The output matrix has the format
+     * TopicResult[topic][run]
      */
-    private static double[] getMinMax(TopicResult tr) {
-        ArrayList<ResultRow> rowBlock = tr.getResultRows();
-        double[] minMax = new double[2];
-        minMax[0] = rowBlock.get(rowBlock.size() - 1).getScore();
-        minMax[1] = rowBlock.get(0).getScore();
+    public static TopicResult[][] ZNorm(TopicResult[][] data, boolean parallel) {
+        return normalize(data, NormMethod.Z, parallel);
+    }
 
-        return minMax;
+    /**
+     * Returns the data normalized with the given method
+     *
+     * @param data   data to normalize
+     * @param method normalization method
+     * @return matrix of TopicResult containing the data with the normalized scores. The output matrix has the format
+     * TopicResult[topic][run]
+     */
+    public static TopicResult[][] normalize(TopicResult[][] data, NormMethod method) {
+        return normalize(data, method, false);
     }
 
     /**
-     * Util method used for normalization.
-     * Returns an array containing of the scores of a TopicResult
+     * Returns the data normalized with the given method.
+     * The blocks are normalized independently, so the results are the same in sequential and in parallel mode
      *
-     * @param tr TopicResult to process
-     * @return array containing all the scores of the given TopicResults
+     * @param data     data to normalize
+     * @param method   normalization method
+     * @param parallel if true the topic x run blocks are normalized in parallel on the common fork-join pool
+     * @return matrix of TopicResult containing the data with the normalized scores. The output matrix has the format
+     * TopicResult[topic][run]
      */
-    private static double[] getScores(TopicResult tr) {
-        double[] scores = new double[tr.size()];
-        for (int i = 0; i < tr.size(); i++) scores[i] = tr.getScore(i);
-        return scores;
+    public static TopicResult[][] normalize(TopicResult[][] data, NormMethod method, boolean parallel) {
+        TopicResult[][] normData = new TopicResult[data.length][];
+        //first block of each topic in the sequence of all the blocks
+        int[] offset = new int[data.length + 1];
+        for (int topic = 0; topic < data.length; topic++) {
+            normData[topic] = new TopicResult[data[topic].length];
+            offset[topic + 1] = offset[topic] + data[topic].length;
+        }
+        IntStream blocks = IntStream.range(0, offset[data.length]);
+        if (parallel) blocks = blocks.parallel();
+        blocks.forEach(b -> {
+            //find the topic of the block
+            int topic = Arrays.binarySearch(offset, b);
+            if (topic < 0) {
+                topic = -topic - 2;
+            } else {
+                //skip the topics without runs
+                while (offset[topic + 1] == b) topic++;
+            }
+            int run = b - offset[topic];
+            double[] p = getParameters(data[topic][run], method);
+            normData[topic][run] = data[topic][run].normalizedView(p[0], p[1], p[2]);
+        });
+        return normData;
     }
 
     /**
-     * Util method used for normalization.
-     * Returns the sum of the scores of a TopicResult
+     * Returns the parameters of the normalization of a block: new_score=(old_score-shift)/divisor+bias
      *
-     * @param tr TopicResult to process
-     * @return sum of the scores of the given TopicResults
+     * @param block  block to normalize
+     * @param method normalization method
+     * @return array containing the parameters, array[0] = shift, array[1] = divisor, array[2] = bias
      */
-    private static double computeSum(TopicResult tr) {
-        double sum = 0;
-        for (ResultRow row : tr.getResultRows()) {
-            sum += row.getScore();
+    public static double[] getParameters(TopicResult block, NormMethod method) {
+        //an empty block is left unchanged
+        if (block.size() == 0) return new double[]{0, 1, 0};
+        ScoreStats stats = block.getStats();
+        switch (method) {
+            case MIN_MAX:
+                //Prevent division by zero: all the scores become 1
+                if (stats.getMin() == stats.getMax()) return new double[]{stats.getMin(), 1, 1};
+                //new_score=(old_score-min_score)/(max_score-min_score)
+                return new double[]{stats.getMin(), stats.getMax() - stats.getMin(), 0};
+            case SUM:
+                //Prevent division by zero: all the scores become 1
+                if (stats.getMin() == stats.getMax()) return new double[]{stats.getMin(), 1, 1};
+                //new_score=(old_score-min_score)/(sum), with the sum of the shifted scores
+                return new double[]{stats.getMin(), stats.getSum() - (stats.getMin() * block.size()), 0};
+            default:
+                //new_score=(old_score-average_score)/sqrt(sum of the squared deviations)
+                return new double[]{stats.getMean(), Math.sqrt(stats.getSquaredDeviations()), 0};
         }
-        return sum;
     }
 
 }
@@ -4,8 +4,13 @@ import java.net.URL;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tools for input data parsing
@@ -13,6 +18,8 @@ import java.util.Scanner;
 public class Parser {
     private String path;
     private TopicResult[][] topicList;
+    //max number of rows loaded for every topic of each run
+    private int depth;
 
     /**
      * Create a parser that load all the data of the runs contained in the given folder.
@@ -23,6 +30,37 @@ public class Parser {
      * @param nTopic        number of topics contained in each run
      */
     public Parser(String folderName, String fileExtension, int firstTopic, int nTopic) {
+        this(folderName, fileExtension, firstTopic, nTopic, false);
+    }
+
+    /**
+     * Create a parser that load all the data of the runs contained in the given folder.
+     *
+     * @param folderName    name of the folder containing the input runs
+     * @param fileExtension extension of the input files
+     * @param firstTopic    number of the first topic contained in each run
+     * @param nTopic        number of topics contained in each run
+     * @param parallel      if true every run file is parsed by its own worker thread
+     */
+    public Parser(String folderName, String fileExtension, int firstTopic, int nTopic, boolean parallel) {
+        this(folderName, fileExtension, firstTopic, nTopic, parallel, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a parser that load the first rows of every topic of the runs contained in the given folder.
+     *
+     * @param folderName    name of the folder containing the input runs
+     * @param fileExtension extension of the input files
+     * @param firstTopic    number of the first topic contained in each run
+     * @param nTopic        number of topics contained in each run
+     * @param parallel      if true every run file is parsed by its own worker thread
+     * @param depth         number of rows to load for every topic of each run (rank cutoff), Integer.MAX_VALUE to
+     *                      load all the rows
+     * @throws IllegalArgumentException if depth is less than 1
+     */
+    public Parser(String folderName, String fileExtension, int firstTopic, int nTopic, boolean parallel, int depth) {
+        if (depth < 1) throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        this.depth = depth;
         String separator = File.separator;
         try {
             URL resource = Parser.class.getResource(separator + folderName);
@@ -34,7 +72,7 @@ public class Parser {
             System.out.println("FOLDER PATH: " + path);
             System.out.println();
             File dir = new File(path);
-            File[] fileList = dir.listFiles((dir1, filename) -> filename.endsWith(fileExtension));
+            File[] fileList = listRunFiles(dir, fileExtension);
             String[] fileNames = new String[fileList.length];
             for (int i = 0; i < fileList.length; i++) {
                 fileNames[i] = fileList[i].getName();
@@ -47,14 +85,9 @@ public class Parser {
             }
             System.out.println();
 
-            FileReader fileReader = new FileReader(path + fileNames[0]);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-            String line;
-            Scanner sc;
             int idr; //run id
             int numTopics = nTopic;
             System.out.println("NUMBER OF TOPICS: " + numTopics + "\n");
-            bufferedReader.close();
             //initialization
             topicList = new TopicResult[numTopics][fileList.length];
             for (int topic = 0; topic < numTopics; topic++) {
@@ -63,26 +96,12 @@ public class Parser {
                 }
             }
             //read input files (runs) --> data organized in
+            int[] runIds = new int[fileList.length];
             for (int i = 0; i < fileList.length; i++) {
-                fileReader = new FileReader(path + fileNames[i]);
-                bufferedReader = new BufferedReader(fileReader);
-                idr = Integer.parseInt(fileNames[i].substring(fileNames[i].lastIndexOf('_') + 1, fileNames[i].lastIndexOf('.')));
-                while ((line = bufferedReader.readLine()) != null) {
-                    sc = new Scanner(line);
-                    int q;
-                    String d;
-                    int r;
-                    double s;
-                    q = Integer.parseInt(sc.next());    //get the topic index
-                    sc.next();                          //skip
-                    d = sc.next();                      //get the doc id
-                    r = Integer.parseInt(sc.next());    //get ranking
-                    s = Double.parseDouble(sc.next());  //get score
-                    //add one row to the TopicResult relative to run idr and topic q
-                    topicList[q - firstTopic][idr].appendRow(q, d, r, s, idr);
-                }
-                bufferedReader.close();
+                idr = getRunId(fileList[i]);
+                runIds[i] = idr;
             }
+            readRuns(fileList, runIds, firstTopic, parallel);
 
         } catch (FileNotFoundException ex) {
             System.out.println("Unable to open file '" + path + "'");
@@ -100,6 +119,37 @@ public class Parser {
      * @param nFiles number of files to be chosen randomly among the ones contained in the input folder
      */
     public Parser(String folderName, String fileExtension, int firstTopic, int nTopic, int nFiles) {
+        this(folderName, fileExtension, firstTopic, nTopic, nFiles, false);
+    }
+
+    /**
+     * Create a parser that load all the data of the runs contained in the given folder.
+     * @param folderName name of the folder containing the input runs
+     * @param fileExtension extension of the input files
+     * @param firstTopic number of the first topic contained in each run
+     * @param nTopic number of topics contained in each run
+     * @param nFiles number of files to be chosen randomly among the ones contained in the input folder
+     * @param parallel if true every run file is parsed by its own worker thread
+     */
+    public Parser(String folderName, String fileExtension, int firstTopic, int nTopic, int nFiles, boolean parallel) {
+        this(folderName, fileExtension, firstTopic, nTopic, nFiles, parallel, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a parser that load the first rows of every topic of the runs contained in the given folder.
+     * @param folderName name of the folder containing the input runs
+     * @param fileExtension extension of the input files
+     * @param firstTopic number of the first topic contained in each run
+     * @param nTopic number of topics contained in each run
+     * @param nFiles number of files to be chosen randomly among the ones contained in the input folder
+     * @param parallel if true every run file is parsed by its own worker thread
+     * @param depth number of rows to load for every topic of each run (rank cutoff), Integer.MAX_VALUE to load all
+     *              the rows
+     * @throws IllegalArgumentException if depth is less than 1
+     */
+    public Parser(String folderName, String fileExtension, int firstTopic, int nTopic, int nFiles, boolean parallel, int depth) {
+        if (depth < 1) throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        this.depth = depth;
         String separator = File.separator;
         try {
             URL resource = Parser.class.getResource(separator + folderName);
@@ -110,16 +160,13 @@ public class Parser {
             }
             System.out.println();
             File dir = new File(path);
-            File[] fileListComplete = dir.listFiles((dir1, filename) -> filename.endsWith(fileExtension));
+            File[] fileListComplete = listRunFiles(dir, fileExtension);
             String[] fileNamesComplete = new String[fileListComplete.length];
             for (int i = 0; i < fileListComplete.length; i++) {
                 fileNamesComplete[i] = fileListComplete[i].getName();
             }
 
 
-            String line;
-            Scanner sc;
-            int idr; //run id
             int numTopics = nTopic;
 
 
@@ -141,9 +188,6 @@ public class Parser {
 
             System.out.println("Chosen files: " + Arrays.toString(fileNames));
 
-            BufferedReader bufferedReader;
-            FileReader fileReader;
-
             //initialization
             topicList = new TopicResult[numTopics][fileList.length];
             for (int topic = 0; topic < numTopics; topic++) {
@@ -152,27 +196,12 @@ public class Parser {
                 }
             }
             //read input files (runs) --> data organized in
+            int[] runIds = new int[fileList.length];
             for (int i = 0; i < fileList.length; i++) {
-                fileReader = new FileReader(path + fileNames[i]);
-                bufferedReader = new BufferedReader(fileReader);
                 //idr = Integer.parseInt(fileNames[i].substring(fileNames[i].lastIndexOf('_') + 1, fileNames[i].lastIndexOf('.')));
-                int topic = 0;
-                while ((line = bufferedReader.readLine()) != null) {
-                    sc = new Scanner(line);
-                    int q;
-                    String d;
-                    int r;
-                    double s;
-                    q = Integer.parseInt(sc.next());    //get the topic index
-                    sc.next();                          //skip
-                    d = sc.next();                      //get the doc id
-                    r = Integer.parseInt(sc.next());    //get ranking
-                    s = Double.parseDouble(sc.next());  //get score
-                    //add one row to the TopicResult relative to run idr and topic q
-                    topicList[q - firstTopic][i].appendRow(q, d, r, s, i);
-                }
-                bufferedReader.close();
+                runIds[i] = i;
             }
+            readRuns(fileList, runIds, firstTopic, parallel);
 
         } catch (FileNotFoundException ex) {
             System.out.println("Unable to open file '" + path + "'");
@@ -181,7 +210,143 @@ public class Parser {
         }
     }
 
+    /**
+     * Returns the run files contained in the given folder, including the gzip-compressed ones
+     *
+     * @param folderName    name of the folder containing the input runs
+     * @param fileExtension extension of the input files
+     * @return run files
+     * @throws IOException if the folder can not be found
+     */
+    public static File[] listRuns(String folderName, String fileExtension) throws IOException {
+        URL resource = Parser.class.getResource(File.separator + folderName);
+        if (resource == null) throw new FileNotFoundException("Unable to find folder '" + folderName + "'");
+        try {
+            return listRunFiles(Paths.get(resource.toURI()).toFile(), fileExtension);
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
 
+    /**
+     * Returns the id of a run, given by the number following the last '_' of its file name (e.g. 7 for
+     * "BM25b0.75_17_7.res" or "BM25b0.75_17_7.res.gz"). The id is the column of the run in the TopicResult matrix
+     *
+     * @param run file containing the run
+     * @return run id
+     * @throws NumberFormatException if the file name does not end with a run id
+     */
+    public static int getRunId(File run) {
+        String fileName = run.getName();
+        String runName = RunReader.isCompressed(fileName) ? fileName.substring(0, fileName.length() - 3) : fileName;
+        return Integer.parseInt(runName.substring(runName.lastIndexOf('_') + 1, runName.lastIndexOf('.')));
+    }
+
+    /**
+     * Returns the files of a folder having the given extension, compressed with gzip or not.
+     * If a run is present both plain and compressed (e.g. "x.res" and "x.res.gz") only the plain file is returned,
+     * so that the run is loaded once
+     *
+     * @param dir           folder containing the input runs
+     * @param fileExtension extension of the input files, e.g. ".res" (matches also ".res.gz")
+     * @return run files
+     */
+    private static File[] listRunFiles(File dir, String fileExtension) {
+        File[] files = dir.listFiles((dir1, filename) -> filename.endsWith(fileExtension) || filename.endsWith(fileExtension + ".gz"));
+        if (files == null) return null;
+        List<File> runs = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            //skip the compressed copy of a plain run
+            if (RunReader.isCompressed(name) && new File(dir, name.substring(0, name.length() - 3)).isFile()) continue;
+            runs.add(file);
+        }
+        return runs.toArray(new File[0]);
+    }
+
+    /**
+     * Read the run files and add their rows to the TopicResult matrix.
+     * Every file writes only to its own column, so in parallel mode the files are parsed concurrently by a pool
+     * with one thread per core.
+     *
+     * @param runs       files containing the runs
+     * @param runIds     run id of each file, used as column index in the TopicResult matrix
+     * @param firstTopic number of the first topic contained in each run
+     * @param parallel   if true the files are parsed concurrently
+     * @throws IOException if a file can not be read or is not in the TREC format
+     */
+    private void readRuns(File[] runs, int[] runIds, int firstTopic, boolean parallel) throws IOException {
+        if (!parallel || runs.length < 2) {
+            for (int i = 0; i < runs.length; i++) {
+                readRun(runs[i], runIds[i], firstTopic);
+            }
+            return;
+        }
+        int nThreads = Math.min(runs.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        List<Future<Void>> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.length; i++) {
+                File run = runs[i];
+                int idr = runIds[i];
+                tasks.add(pool.submit(() -> {
+                    readRun(run, idr, firstTopic);
+                    return null;
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the runs");
+        } catch (ExecutionException e) {
+            //fail as the sequential path does: unchecked exceptions are rethrown unchanged
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            //stop the other workers and wait for them, so that nobody writes to the matrix after returning
+            for (Future<Void> task : tasks) {
+                task.cancel(true);
+            }
+            pool.shutdownNow();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (pool.awaitTermination(1, TimeUnit.MINUTES)) break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read a run file (or its binary cache) and add its rows to the corresponding column of the TopicResult matrix.
+     * Only the first depth rows of every topic are loaded
+     *
+     * @param run        file containing the run
+     * @param idr        run id, used as column index in the TopicResult matrix
+     * @param firstTopic number of the first topic contained in the run
+     * @throws IOException if the file can not be read or is not in the TREC format
+     */
+    private void readRun(File run, int idr, int firstTopic) throws IOException {
+        //the run is parsed only if its binary cache is missing or out of date
+        RunCache content = RunCache.load(run, depth);
+        for (int block = 0; block < content.getBlockCount(); block++) {
+            //a cancelled worker stops at the next block
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Interrupted while reading " + run);
+            int q = content.getBlockTopic(block);
+            for (int i = 0; i < content.getBlockSize(block); i++) {
+                //add one row to the TopicResult relative to run idr and topic q
+                topicList[q - firstTopic][idr].appendRow(q, content.getDoc(block, i), content.getRank(block, i), content.getScore(block, i), idr);
+            }
+        }
+    }
 
     /**
      * Returns a copy of the data structure passed in input
@@ -5,11 +5,11 @@
 public class ResultRow implements Comparable {
     private int idRun;
     private int idTopic;
-    private String docId;
+    private int docId;
     private int rank;
     private double score;
 
-    public ResultRow(int idRun, int idTopic, String docId, int rank, double score) {
+    public ResultRow(int idRun, int idTopic, int docId, int rank, double score) {
         this.idRun = idRun;
         this.idTopic = idTopic;
         this.docId = docId;
@@ -36,12 +36,20 @@ public class ResultRow implements Comparable {
 
     /**
      * Get the doc id of the row
-     * @return doc id
+     * @return id of the document in the DocDictionary
      */
-    public String getDoc() {
+    public int getDoc() {
         return docId;
     }
 
+    /**
+     * Get the TREC docno of the row
+     * @return docno
+     */
+    public String getDocName() {
+        return DocDictionary.getName(docId);
+    }
+
     /**
      * Get the ranking of the document in the retrieved list of documents
      * @return ranking position (1 to 1000)
@@ -78,7 +86,7 @@ public class ResultRow implements Comparable {
      * set the docId parameter
      * @param doc new value
      */
-    public void setDoc(String doc) {
+    public void setDoc(int doc) {
         docId = doc;
     }
 
@@ -116,6 +124,6 @@ public class ResultRow implements Comparable {
      */
     @Override
     public String toString() {
-        return idTopic + " Q0 " + docId + " " + rank + " " + score + " OUTPUT";
+        return idTopic + " Q0 " + getDocName() + " " + rank + " " + score + " OUTPUT";
     }
 }
@@ -0,0 +1,323 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Binary columnar copy of a run file, stored next to the run with the extension ".cache".
+ * The rows are grouped in per-topic blocks; doc ids, ranks and scores are stored in separate columns and
+ * the doc ids are indexes in the table of the distinct documents of the run. When a run is loaded its documents
+ * are added to the global DocDictionary, so the rows are returned with the global int id of their document.
+ * <p>
+ * File layout (big endian):
+ * magic, version, size and last modified time of the source run,
+ * number of documents followed by the documents (length + ISO-8859-1 bytes),
+ * number of blocks followed by the blocks (topic, number of rows, doc column, rank column, score column)
+ */
+public class RunCache {
+    private static final int MAGIC = 0x52554E43;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".cache";
+    //magic, version, size, mtime, number of documents and number of blocks
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+
+    private final String[] docNames;
+    private final int[] docIds;
+    private final int[] blockTopic;
+    private final int[] blockStart;
+    private final int[] doc;
+    private final int[] rank;
+    private final double[] score;
+
+    private RunCache(String[] docNames, int[] blockTopic, int[] blockStart, int[] doc, int[] rank, double[] score) {
+        this.docNames = docNames;
+        this.docIds = DocDictionary.internAll(docNames);
+        this.blockTopic = blockTopic;
+        this.blockStart = blockStart;
+        this.doc = doc;
+        this.rank = rank;
+        this.score = score;
+    }
+
+    /**
+     * Returns the content of a run, reading it from its cache if the cache is up to date.
+     * Otherwise the run is parsed and the cache is rebuilt.
+     *
+     * @param run file containing the run
+     * @return columnar content of the run
+     * @throws IOException if the run can not be read or is not in the TREC format
+     */
+    public static RunCache load(File run) throws IOException {
+        return load(run, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the first rows of every topic block of a run, reading them from its cache if the cache is up to date.
+     * Otherwise the run is parsed; the cache always contains the complete run, so it is rebuilt only when all the
+     * rows are requested.
+     *
+     * @param run   file containing the run
+     * @param depth number of rows to keep for every topic, Integer.MAX_VALUE to keep all the rows
+     * @return columnar content of the run
+     * @throws IOException if the run can not be read or is not in the TREC format
+     * @throws IllegalArgumentException if depth is less than 1
+     */
+    public static RunCache load(File run, int depth) throws IOException {
+        if (depth < 1) throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        File cache = new File(run.getPath() + EXTENSION);
+        if (cache.isFile()) {
+            RunCache cached;
+            try {
+                cached = read(cache, run.length(), run.lastModified(), depth);
+            } catch (RuntimeException e) {
+                //corrupted cache: rebuild it
+                cached = null;
+            }
+            if (cached != null) return cached;
+        }
+        RunCache parsed = parse(run, depth);
+        if (depth != Integer.MAX_VALUE) return parsed;
+        try {
+            parsed.write(cache, run.length(), run.lastModified());
+        } catch (IOException e) {
+            System.err.println("Unable to write cache '" + cache + "': " + e.getMessage());
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse a run in the TREC format
+     *
+     * @param run   file containing the run
+     * @param depth number of rows to keep for every topic, Integer.MAX_VALUE to keep all the rows
+     * @return columnar content of the run
+     * @throws IOException if the run can not be read or is not in the TREC format
+     * @throws IllegalArgumentException if depth is less than 1
+     */
+    public static RunCache parse(File run, int depth) throws IOException {
+        String[] docNames;
+        int[] blockTopic = new int[64];
+        int[] blockStart = new int[65];
+        int[] doc = new int[1024];
+        int[] rank = new int[1024];
+        double[] score = new double[1024];
+        int nBlocks = 0;
+        int nRows = 0;
+        try (RunReader reader = new RunReader(run)) {
+            reader.setDepth(depth);
+            while (reader.next()) {
+                //a new block starts every time the topic changes
+                if (nBlocks == 0 || blockTopic[nBlocks - 1] != reader.getTopic()) {
+                    if (nBlocks == blockTopic.length) {
+                        blockTopic = Arrays.copyOf(blockTopic, 2 * nBlocks);
+                        blockStart = Arrays.copyOf(blockStart, 2 * nBlocks + 1);
+                    }
+                    blockTopic[nBlocks] = reader.getTopic();
+                    blockStart[nBlocks] = nRows;
+                    nBlocks++;
+                }
+                if (nRows == doc.length) {
+                    doc = Arrays.copyOf(doc, 2 * nRows);
+                    rank = Arrays.copyOf(rank, 2 * nRows);
+                    score = Arrays.copyOf(score, 2 * nRows);
+                }
+                doc[nRows] = reader.getDocIndex();
+                rank[nRows] = reader.getRank();
+                score[nRows] = reader.getScore();
+                nRows++;
+            }
+            docNames = new String[reader.getDocCount()];
+            for (int i = 0; i < docNames.length; i++) {
+                docNames[i] = reader.getDocName(i);
+            }
+        }
+        blockStart[nBlocks] = nRows;
+        return new RunCache(docNames, Arrays.copyOf(blockTopic, nBlocks),
+                Arrays.copyOf(blockStart, nBlocks + 1), doc, rank, score);
+    }
+
+    /**
+     * Read a cache file
+     *
+     * @param cache        cache file
+     * @param sourceSize   current size of the source run
+     * @param sourceMtime  current last modified time of the source run
+     * @param depth        number of rows to keep for every topic
+     * @return content of the cache, null if the cache is stale or invalid
+     * @throws IOException if the cache can not be read
+     */
+    private static RunCache read(File cache, long sourceSize, long sourceMtime, int depth) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r")) {
+            FileChannel channel = file.getChannel();
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            if (buffer.getLong() != sourceSize || buffer.getLong() != sourceMtime) return null;
+
+            //every count is checked against the bytes left before allocating, a corrupted count would not fit in memory
+            int nDocs = buffer.getInt();
+            if (nDocs < 0 || nDocs > buffer.remaining() / 4) return null;
+            String[] docNames = new String[nDocs];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < docNames.length; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) return null;
+                if (length > bytes.length) bytes = new byte[length];
+                buffer.get(bytes, 0, length);
+                docNames[i] = new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+
+            int nBlocks = buffer.getInt();
+            if (nBlocks < 0 || nBlocks > buffer.remaining() / 8) return null;
+            int[] blockTopic = new int[nBlocks];
+            int[] blockStart = new int[nBlocks + 1];
+            int[] blockSize = new int[nBlocks];
+            //the block headers are interleaved with the columns: first pass to size the columns
+            int position = buffer.position();
+            int nRows = 0;
+            for (int b = 0; b < nBlocks; b++) {
+                blockTopic[b] = buffer.getInt(position);
+                blockSize[b] = buffer.getInt(position + 4);
+                if (blockSize[b] < 0 || blockSize[b] > (buffer.limit() - position - 8) / 16) return null;
+                blockStart[b] = nRows;
+                nRows += Math.min(blockSize[b], depth);
+                position += 8 + 16 * blockSize[b];
+            }
+            blockStart[nBlocks] = nRows;
+            if (position != buffer.limit()) return null;
+
+            int[] doc = new int[nRows];
+            int[] rank = new int[nRows];
+            double[] score = new double[nRows];
+            for (int b = 0; b < nBlocks; b++) {
+                int size = blockSize[b];
+                int kept = blockStart[b + 1] - blockStart[b];
+                buffer.position(buffer.position() + 8);
+                buffer.asIntBuffer().get(doc, blockStart[b], kept);
+                buffer.position(buffer.position() + 4 * size);
+                buffer.asIntBuffer().get(rank, blockStart[b], kept);
+                buffer.position(buffer.position() + 4 * size);
+                buffer.asDoubleBuffer().get(score, blockStart[b], kept);
+                buffer.position(buffer.position() + 8 * size);
+            }
+            //the doc column must refer to the documents of the run, otherwise the cache is corrupted
+            for (int i = 0; i < nRows; i++) {
+                if (doc[i] < 0 || doc[i] >= docNames.length) return null;
+            }
+            return new RunCache(docNames, blockTopic, blockStart, doc, rank, score);
+        }
+    }
+
+    /**
+     * Write the content of this run to a cache file
+     *
+     * @param cache       cache file
+     * @param sourceSize  size of the source run
+     * @param sourceMtime last modified time of the source run
+     * @throws IOException if the cache can not be written
+     */
+    private void write(File cache, long sourceSize, long sourceMtime) throws IOException {
+        byte[][] names = new byte[docNames.length][];
+        long size = HEADER_SIZE;
+        for (int i = 0; i < docNames.length; i++) {
+            names[i] = docNames[i].getBytes(StandardCharsets.ISO_8859_1);
+            size += 4 + names[i].length;
+        }
+        size += 8L * getBlockCount() + 16L * blockStart[getBlockCount()];
+        if (size > Integer.MAX_VALUE) throw new IOException("Run too big to be cached");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceMtime);
+        buffer.putInt(names.length);
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+        buffer.putInt(getBlockCount());
+        for (int b = 0; b < getBlockCount(); b++) {
+            int start = blockStart[b];
+            int blockSize = getBlockSize(b);
+            buffer.putInt(blockTopic[b]).putInt(blockSize);
+            buffer.asIntBuffer().put(doc, start, blockSize);
+            buffer.position(buffer.position() + 4 * blockSize);
+            buffer.asIntBuffer().put(rank, start, blockSize);
+            buffer.position(buffer.position() + 4 * blockSize);
+            buffer.asDoubleBuffer().put(score, start, blockSize);
+            buffer.position(buffer.position() + 8 * blockSize);
+        }
+        buffer.flip();
+
+        //write to a temporary file first, so a concurrent reader never sees a partial cache
+        File tmp = File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile().getParentFile());
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(tmp, "rw")) {
+                FileChannel channel = file.getChannel();
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * get the number of per-topic blocks in the run
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return blockTopic.length;
+    }
+
+    /**
+     * get the topic of a block
+     * @param block block index
+     * @return topic number
+     */
+    public int getBlockTopic(int block) {
+        return blockTopic[block];
+    }
+
+    /**
+     * get the number of rows of a block
+     * @param block block index
+     * @return number of rows
+     */
+    public int getBlockSize(int block) {
+        return blockStart[block + 1] - blockStart[block];
+    }
+
+    /**
+     * get the doc of a row of a block
+     * @param block block index
+     * @param row row index inside the block
+     * @return id of the document in the DocDictionary
+     */
+    public int getDoc(int block, int row) {
+        return docIds[doc[blockStart[block] + row]];
+    }
+
+    /**
+     * get the rank of a row of a block
+     * @param block block index
+     * @param row row index inside the block
+     * @return rank
+     */
+    public int getRank(int block, int row) {
+        return rank[blockStart[block] + row];
+    }
+
+    /**
+     * get the score of a row of a block
+     * @param block block index
+     * @param row row index inside the block
+     * @return score
+     */
+    public double getScore(int block, int row) {
+        return score[blockStart[block] + row];
+    }
+}
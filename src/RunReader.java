@@ -0,0 +1,637 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Byte level reader for the runs in the TREC format: "topic Q0 docId rank score runTag".
+ * The file is memory-mapped and every line is tokenized directly on the mapped bytes; numbers are parsed
+ * without building intermediate strings and the doc ids are numbered with a per-run dictionary keyed on
+ * their bytes, so a string is created only once for every distinct document of the run.
+ * Gzip-compressed runs (extension ".gz") are decompressed while they are read: the lines are tokenized in a
+ * buffer that is refilled as the decompressed data arrives.
+ */
+public class RunReader implements Closeable {
+    //max number of significant digits that fit in a long mantissa
+    private static final int MAX_DIGITS = 18;
+    //exact powers of ten representable as double
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    //range of exponents covered by the 128 bit powers of ten used by the Eisel-Lemire conversion
+    private static final int POW_MIN = -64;
+    private static final int POW_MAX = 64;
+    private static final long[] POW_HI = new long[POW_MAX - POW_MIN + 1];
+    private static final long[] POW_LO = new long[POW_MAX - POW_MIN + 1];
+
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = POW_MIN; q <= POW_MAX; q++) {
+            BigInteger p = five.pow(Math.abs(q));
+            BigInteger c;
+            if (q >= 0) {
+                //truncated mantissa of 5^q, most significant bit in position 127
+                int shift = p.bitLength() - 128;
+                c = shift > 0 ? p.shiftRight(shift) : p.shiftLeft(-shift);
+            } else {
+                //reciprocal of 5^-q rounded up, then truncated to 128 bits
+                int z = p.bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft(b).divide(p).add(BigInteger.ONE);
+                int shift = c.bitLength() - 128;
+                if (shift > 0) c = c.shiftRight(shift);
+            }
+            POW_HI[q - POW_MIN] = c.shiftRight(64).longValue();
+            POW_LO[q - POW_MIN] = c.longValue();
+        }
+    }
+
+    //size of the buffer used for compressed runs
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    private final Closeable file;
+    //mapped file, or window on the decompressed stream
+    private ByteBuffer buffer;
+    //source of the decompressed data, null for mapped files
+    private final ReadableByteChannel stream;
+    private boolean endOfStream;
+    private int limit;
+    private int position;
+
+    //max number of rows read for every topic block
+    private int depth = Integer.MAX_VALUE;
+    //rows read in the current topic block and bytes of its topic token
+    private int blockRows;
+    private byte[] blockTopic = new byte[16];
+    private int blockTopicLength;
+
+    //dictionary of the distinct doc ids of the run: open addressing table of (local index + 1), 0 = empty slot
+    private int[] slots = new int[1024];
+    private int[] nameStart = new int[513];
+    private int[] nameHash = new int[512];
+    private byte[] names = new byte[8192];
+    private int nNames;
+    //DocDictionary id of every document of the run, -1 if not looked up yet
+    private int[] docIds = new int[0];
+    //true if the dictionary is cleared at the start of every topic block
+    private boolean dictionaryPerBlock;
+
+    //content of the last row read
+    private int topic;
+    private int docIndex;
+    private int rank;
+    private double score;
+
+    /**
+     * Open a run file: plain runs are mapped, gzip-compressed runs are decompressed while reading
+     *
+     * @param run file containing the run
+     * @throws IOException if the file can not be opened or is too big to be mapped
+     */
+    public RunReader(File run) throws IOException {
+        if (isCompressed(run.getName())) {
+            stream = Channels.newChannel(new GZIPInputStream(new FileInputStream(run), STREAM_BUFFER_SIZE));
+            file = stream;
+            buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            limit = 0;
+        } else {
+            RandomAccessFile raf = new RandomAccessFile(run, "r");
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                raf.close();
+                throw new IOException("Run file too big to be mapped: " + run);
+            }
+            stream = null;
+            file = raf;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            limit = buffer.limit();
+        }
+        position = 0;
+    }
+
+    /**
+     * Check if a run file is gzip-compressed
+     *
+     * @param fileName name of the run file
+     * @return true if the name ends with ".gz"
+     */
+    public static boolean isCompressed(String fileName) {
+        return fileName.endsWith(".gz");
+    }
+
+    /**
+     * Set the max number of rows read for every topic block. The following rows of the block are skipped
+     * comparing only their first bytes with the topic of the block, without tokenizing them
+     *
+     * @param depth number of rows to keep for every topic, Integer.MAX_VALUE to keep all the rows
+     * @throws IllegalArgumentException if depth is less than 1
+     */
+    public void setDepth(int depth) {
+        if (depth < 1) throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        this.depth = depth;
+    }
+
+    /**
+     * Clear the dictionary of the documents at the start of every topic block, so that its size depends on the
+     * largest block instead of on the whole run. The doc indexes returned by getDocIndex are then valid only until
+     * the next block starts
+     *
+     * @param dictionaryPerBlock true to clear the dictionary at every block
+     */
+    public void setDictionaryPerBlock(boolean dictionaryPerBlock) {
+        this.dictionaryPerBlock = dictionaryPerBlock;
+    }
+
+    /**
+     * Read the next row of the run
+     *
+     * @return true if a row has been read, false at the end of the file
+     * @throws IOException if the row is not in the TREC format
+     */
+    public boolean next() throws IOException {
+        //skip empty lines
+        skipBlank();
+        //skip the rows of the current block beyond the depth
+        if (blockRows >= depth) {
+            while (position < limit) {
+                ensureLine();
+                if (!inCurrentBlock(position)) break;
+                skipLine(position);
+                skipBlank();
+            }
+        }
+        if (position >= limit) return false;
+        ensureLine();
+
+        int start = position;
+        int end = tokenEnd(start);
+        int rowTopic = parseInt(start, end);       //get the topic index
+        if (blockRows == 0 || rowTopic != topic) {
+            blockRows = 0;
+            blockTopicLength = end - start;
+            if (blockTopicLength > blockTopic.length) blockTopic = new byte[blockTopicLength];
+            for (int i = 0; i < blockTopicLength; i++) blockTopic[i] = buffer.get(start + i);
+            if (dictionaryPerBlock) clearDictionary();
+        }
+        blockRows++;
+        topic = rowTopic;
+        end = tokenEnd(tokenStart(end));           //skip
+        start = tokenStart(end);
+        end = tokenEnd(start);
+        docIndex = lookupDoc(start, end);          //get the doc id
+        start = tokenStart(end);
+        end = tokenEnd(start);
+        rank = parseInt(start, end);               //get ranking
+        start = tokenStart(end);
+        end = tokenEnd(start);
+        score = parseDouble(start, end);           //get score
+        skipLine(end);
+        return true;
+    }
+
+    /**
+     * get the topic of the last row read
+     * @return topic number
+     */
+    public int getTopic() {
+        return topic;
+    }
+
+    /**
+     * get the doc of the last row read
+     * @return index of the doc in the dictionary of this run
+     */
+    public int getDocIndex() {
+        return docIndex;
+    }
+
+    /**
+     * get the doc of the last row read
+     * @return id of the doc in the DocDictionary
+     */
+    public int getDocId() {
+        if (docIndex >= docIds.length) {
+            int oldLength = docIds.length;
+            docIds = Arrays.copyOf(docIds, Math.max(nNames, 2 * oldLength));
+            Arrays.fill(docIds, oldLength, docIds.length, -1);
+        }
+        if (docIds[docIndex] == -1) docIds[docIndex] = DocDictionary.intern(getDocName(docIndex));
+        return docIds[docIndex];
+    }
+
+    /**
+     * get the number of distinct documents read so far
+     * @return size of the dictionary of this run
+     */
+    public int getDocCount() {
+        return nNames;
+    }
+
+    /**
+     * get the doc Id of a document of this run
+     * @param index index of the doc in the dictionary of this run
+     * @return doc id
+     */
+    public String getDocName(int index) {
+        return new String(names, nameStart[index], nameStart[index + 1] - nameStart[index], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * get the rank of the last row read
+     * @return rank
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * get the score of the last row read
+     * @return score
+     */
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Move to the first byte of the next token in the current line
+     *
+     * @param from position where to start the search
+     * @return position of the token
+     * @throws IOException if the line ends before the token
+     */
+    private int tokenStart(int from) throws IOException {
+        int i = from;
+        byte c;
+        while (i < limit && ((c = buffer.get(i)) == ' ' || c == '\t' || c == '\r')) i++;
+        if (i >= limit || buffer.get(i) == '\n') throw malformed(i);
+        return i;
+    }
+
+    /**
+     * Returns the position following the last byte of the token starting at the given position
+     *
+     * @param from first byte of the token
+     * @return end of the token (exclusive)
+     */
+    private int tokenEnd(int from) {
+        int i = from;
+        while (i < limit && !isSpace(buffer.get(i))) i++;
+        return i;
+    }
+
+    /**
+     * Skip whitespaces and empty lines
+     *
+     * @throws IOException if the compressed stream can not be read
+     */
+    private void skipBlank() throws IOException {
+        do {
+            while (position < limit && isSpace(buffer.get(position))) position++;
+        } while (position >= limit && fill());
+    }
+
+    /**
+     * Make sure that the whole current line is in the buffer, reading more data from the compressed stream if
+     * needed. Nothing to do for mapped files
+     *
+     * @throws IOException if the compressed stream can not be read
+     */
+    private void ensureLine() throws IOException {
+        if (stream == null) return;
+        int from = position;
+        while (true) {
+            for (int i = from; i < limit; i++) {
+                if (buffer.get(i) == '\n') return;
+            }
+            from = limit - position;
+            if (!fill()) return;
+        }
+    }
+
+    /**
+     * Read more data from the compressed stream. The unread bytes are moved to the start of the buffer, which
+     * grows if a line does not fit in it
+     *
+     * @return false if there is no more data to read
+     * @throws IOException if the compressed stream can not be read
+     */
+    private boolean fill() throws IOException {
+        if (stream == null || endOfStream) return false;
+        byte[] array = buffer.array();
+        int remaining = limit - position;
+        if (remaining == array.length) {
+            array = Arrays.copyOf(array, 2 * array.length);
+            buffer = ByteBuffer.wrap(array);
+        } else {
+            System.arraycopy(array, position, array, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+        int read;
+        do {
+            buffer.limit(array.length).position(limit);
+            read = stream.read(buffer);
+        } while (read == 0);
+        if (read < 0) {
+            endOfStream = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /**
+     * Check if the line starting at the given position has the same topic token of the current block
+     *
+     * @param from first byte of the line
+     * @return true if the line belongs to the current block
+     */
+    private boolean inCurrentBlock(int from) {
+        if (from + blockTopicLength >= limit) return false;
+        for (int i = 0; i < blockTopicLength; i++) {
+            if (buffer.get(from + i) != blockTopic[i]) return false;
+        }
+        byte c = buffer.get(from + blockTopicLength);
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Skip the remaining bytes of the current line
+     *
+     * @param from position inside the line
+     */
+    private void skipLine(int from) {
+        int i = from;
+        while (i < limit && buffer.get(i) != '\n') i++;
+        position = i + 1;
+    }
+
+    /**
+     * Returns the index of the doc id token in the dictionary of this run, adding it if not present
+     *
+     * @param start first byte
+     * @param end   end of the token (exclusive)
+     * @return index of the doc
+     */
+    private int lookupDoc(int start, int end) {
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + buffer.get(i);
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int index = slots[slot] - 1;
+            if (nameHash[index] == hash && sameName(index, start, length)) return index;
+            slot = (slot + 1) & mask;
+        }
+
+        //new document: store its bytes
+        if (nNames == nameHash.length) {
+            nameHash = Arrays.copyOf(nameHash, 2 * nNames);
+            nameStart = Arrays.copyOf(nameStart, 2 * nNames + 1);
+        }
+        int offset = nameStart[nNames];
+        if (offset + length > names.length) names = Arrays.copyOf(names, Math.max(offset + length, 2 * names.length));
+        for (int i = 0; i < length; i++) names[offset + i] = buffer.get(start + i);
+        nameHash[nNames] = hash;
+        nameStart[nNames + 1] = offset + length;
+        slots[slot] = nNames + 1;
+        nNames++;
+        if (2 * nNames > slots.length) rehash();
+        return nNames - 1;
+    }
+
+    private boolean sameName(int index, int start, int length) {
+        int offset = nameStart[index];
+        if (nameStart[index + 1] - offset != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (names[offset + i] != buffer.get(start + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove all the documents from the dictionary, keeping the allocated arrays for the next block
+     */
+    private void clearDictionary() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(docIds, -1);
+        nNames = 0;
+    }
+
+    /**
+     * Double the size of the open addressing table of the dictionary
+     */
+    private void rehash() {
+        slots = new int[2 * slots.length];
+        int mask = slots.length - 1;
+        for (int index = 0; index < nNames; index++) {
+            int slot = mix(nameHash[index]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = index + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Parse an integer token
+     *
+     * @param start first byte
+     * @param end   end of the token (exclusive)
+     * @return parsed value
+     * @throws IOException if the token is not a number
+     */
+    private int parseInt(int start, int end) throws IOException {
+        int i = start;
+        boolean negative = false;
+        if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == end) throw malformed(start);
+        int value = 0;
+        for (; i < end; i++) {
+            int d = buffer.get(i) - '0';
+            if (d < 0 || d > 9) throw malformed(start);
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a decimal token. The common case (at most 18 significant digits and a small exponent) is converted
+     * exactly using Clinger's fast path or the Eisel-Lemire algorithm; other inputs fall back to
+     * Double.parseDouble.
+     *
+     * @param start first byte
+     * @param end   end of the token (exclusive)
+     * @return parsed value, identical to the one returned by Double.parseDouble
+     * @throws IOException if the token is not a number
+     */
+    private double parseDouble(int start, int end) throws IOException {
+        int i = start;
+        boolean negative = false;
+        if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c == '.' && !point) {
+                point = true;
+                continue;
+            }
+            int d = c - '0';
+            if (d < 0 || d > 9) break;
+            anyDigit = true;
+            if (point) exponent--;
+            //leading zeros are not significant
+            if (mantissa == 0 && d == 0) continue;
+            if (++digits > MAX_DIGITS) return parseDoubleSlow(start, end);
+            mantissa = mantissa * 10 + d;
+        }
+        if (!anyDigit) return parseDoubleSlow(start, end);
+        if (i < end) {
+            byte c = buffer.get(i);
+            if (c != 'e' && c != 'E') return parseDoubleSlow(start, end);
+            i++;
+            boolean negativeExp = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExp = buffer.get(i) == '-';
+                i++;
+            }
+            if (i == end || end - i > 4) return parseDoubleSlow(start, end);
+            int exp = 0;
+            for (; i < end; i++) {
+                int d = buffer.get(i) - '0';
+                if (d < 0 || d > 9) return parseDoubleSlow(start, end);
+                exp = exp * 10 + d;
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (mantissa == 0) return negative ? -0.0 : 0.0;
+        //Clinger's fast path: both operands are exact, so a single rounding gives the correct result
+        if (mantissa <= (1L << 53) && exponent >= -22 && exponent <= 22) {
+            double value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+            return negative ? -value : value;
+        }
+        if (exponent >= POW_MIN && exponent <= POW_MAX) {
+            double value = eiselLemire(mantissa, exponent, negative);
+            if (!Double.isNaN(value)) return value;
+        }
+        return parseDoubleSlow(start, end);
+    }
+
+    /**
+     * Conversion of mantissa * 10^exp10 with the Eisel-Lemire algorithm
+     *
+     * @param mantissa decimal significand, non zero
+     * @param exp10    decimal exponent, inside the range of the powers table
+     * @param negative sign of the number
+     * @return correctly rounded value, NaN if the algorithm can not decide the rounding
+     */
+    private static double eiselLemire(long mantissa, int exp10, boolean negative) {
+        int clz = Long.numberOfLeadingZeros(mantissa);
+        long man = mantissa << clz;
+        long retExp2 = ((217706L * exp10) >> 16) + 64 + 1023 - clz;
+
+        long powHi = POW_HI[exp10 - POW_MIN];
+        long powLo = POW_LO[exp10 - POW_MIN];
+        long xHi = unsignedMultiplyHigh(man, powHi);
+        long xLo = man * powHi;
+        //the truncated product may be too imprecise: use the lower half of the power too
+        if ((xHi & 0x1FF) == 0x1FF && Long.compareUnsigned(xLo + man, man) < 0) {
+            long yHi = unsignedMultiplyHigh(man, powLo);
+            long yLo = man * powLo;
+            long mergedHi = xHi;
+            long mergedLo = xLo + yHi;
+            if (Long.compareUnsigned(mergedLo, xLo) < 0) mergedHi++;
+            if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned(yLo + man, man) < 0) {
+                return Double.NaN;
+            }
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+
+        long msb = xHi >>> 63;
+        long retMantissa = xHi >>> (msb + 9);
+        retExp2 -= 1 ^ msb;
+        //halfway between two doubles: not decidable here
+        if (xLo == 0 && (xHi & 0x1FF) == 0 && (retMantissa & 3) == 1) return Double.NaN;
+
+        retMantissa += retMantissa & 1;
+        retMantissa >>>= 1;
+        if ((retMantissa >>> 53) > 0) {
+            retMantissa >>>= 1;
+            retExp2++;
+        }
+        //subnormal, infinite or NaN
+        if (retExp2 <= 0 || retExp2 >= 0x7FF) return Double.NaN;
+        long bits = retExp2 << 52 | retMantissa & 0x000FFFFFFFFFFFFFL;
+        if (negative) bits |= 0x8000000000000000L;
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Returns the upper 64 bits of the unsigned 128 bit product of two longs
+     */
+    private static long unsignedMultiplyHigh(long x, long y) {
+        long x0 = x & 0xFFFFFFFFL;
+        long x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long p01 = x0 * y1;
+        long middle = x1 * y0 + ((x0 * y0) >>> 32) + (p01 & 0xFFFFFFFFL);
+        return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+    }
+
+    /**
+     * Parse a decimal token using Double.parseDouble
+     *
+     * @param start first byte
+     * @param end   end of the token (exclusive)
+     * @return parsed value
+     * @throws IOException if the token is not a number
+     */
+    private double parseDoubleSlow(int start, int end) throws IOException {
+        byte[] token = new byte[end - start];
+        for (int i = 0; i < token.length; i++) token[i] = buffer.get(start + i);
+        try {
+            return Double.parseDouble(new String(token, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            throw malformed(start);
+        }
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private IOException malformed(int at) {
+        return new IOException("Malformed run line at byte " + at);
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Loops over contiguous arrays of scores, used to normalize whole blocks at once.
+ * The loops have no calls or branches on the elements, so that the JIT compiler can vectorize them with SIMD
+ * instructions. They compute exactly the same values of the corresponding scalar expressions.
+ */
+public class ScoreKernels {
+
+    private ScoreKernels() {
+    }
+
+    /**
+     * Apply an affine normalization to a range of scores: dst[i] = (src[i] - shift) / divisor + bias.
+     * The source and the destination can be the same array
+     *
+     * @param src     source scores
+     * @param srcPos  first index of the source
+     * @param dst     destination array
+     * @param dstPos  first index of the destination
+     * @param length  number of scores
+     * @param shift   value subtracted from the scores
+     * @param divisor value dividing the shifted scores
+     * @param bias    value added to the scaled scores, skipped if 0 (that would turn a -0.0 into 0.0)
+     */
+    public static void normalize(double[] src, int srcPos, double[] dst, int dstPos, int length,
+                                 double shift, double divisor, double bias) {
+        if (bias != 0) {
+            for (int i = 0; i < length; i++) {
+                dst[dstPos + i] = (src[srcPos + i] - shift) / divisor + bias;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstPos + i] = (src[srcPos + i] - shift) / divisor;
+            }
+        }
+    }
+}
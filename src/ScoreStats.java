@@ -0,0 +1,99 @@
+/**
+ * Statistics of the scores of a TopicResult, used by the normalizations.
+ * The statistics are computed once from the rows sorted by descending score, and cached by the TopicResult until it
+ * is modified.
+ */
+public class ScoreStats {
+    private final int count;
+    private final double min;
+    private final double max;
+    private final double sum;
+    private final double m2;
+
+    /**
+     * Compute the statistics of a block of scores
+     *
+     * @param scores scores sorted by descending value
+     * @param count  number of scores
+     */
+    ScoreStats(double[] scores, int count) {
+        this.count = count;
+        if (count == 0) {
+            min = Double.NaN;
+            max = Double.NaN;
+            sum = 0;
+            m2 = Double.NaN;
+            return;
+        }
+        max = scores[0];
+        min = scores[count - 1];
+        double s = 0;
+        for (int i = 0; i < count; i++) {
+            s += scores[i];
+        }
+        sum = s;
+        //second pass over the deviations from the mean, more accurate than a running sum of squares
+        double mean = sum / count;
+        double squares = 0;
+        for (int i = 0; i < count; i++) {
+            squares += Math.pow(scores[i] - mean, 2);
+        }
+        m2 = squares;
+    }
+
+    /**
+     * get the number of scores
+     * @return number of scores
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * get the minimum score
+     * @return minimum score, NaN if there are no scores
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * get the maximum score
+     * @return maximum score, NaN if there are no scores
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * get the sum of the scores
+     * @return sum of the scores
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * get the mean of the scores
+     * @return mean score, NaN if there are no scores
+     */
+    public double getMean() {
+        return sum / count;
+    }
+
+    /**
+     * get the sum of the squared deviations of the scores from their mean
+     * @return sum of the squared deviations, NaN if there are no scores
+     */
+    public double getSquaredDeviations() {
+        return m2;
+    }
+
+    /**
+     * get the (population) variance of the scores
+     * @return variance, NaN if there are no scores
+     */
+    public double getVariance() {
+        return m2 / count;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * Rank fusion of runs that do not fit in memory.
+ * The run files are read together one topic at a time, like in a k-way merge: as soon as every run has supplied a
+ * topic, its blocks are normalized and fused, the result is written and the blocks are dropped. The memory used
+ * depends on the size of a single topic instead of on the whole collection: the documents are numbered per topic,
+ * and neither the readers nor the global DocDictionary keep the documents of the topics already written.
+ * <p>
+ * The rows of every run must be grouped by topic and the topics must appear in ascending order, as in the TREC runs.
+ */
+public class StreamingFusion {
+
+    private StreamingFusion() {
+    }
+
+    /**
+     * Fuse the runs contained in the given folder
+     *
+     * The runs are fused in order of run id, as they are placed in the columns of the Parser matrix, so the result
+     * is the same of the fusion of the data loaded by the Parser
+     *
+     * @param folderName    name of the folder containing the input runs
+     * @param fileExtension extension of the input files
+     * @param normalization normalization method, e.g. Normalization::SumNorm
+     * @param fusion        fusion method, e.g. Fusion::combSum
+     * @param out           destination of the fused runs, written in the same format of TopicResult.toString
+     * @return number of fused topics
+     * @throws IOException if a run can not be read or is not sorted by topic, or the output can not be written
+     */
+    public static int fuse(String folderName, String fileExtension, Function<TopicResult[][], TopicResult[][]> normalization,
+                           Function<TopicResult[][], TopicResult[]> fusion, Writer out) throws IOException {
+        File[] runs = Parser.listRuns(folderName, fileExtension);
+        //the order of the files listed is unspecified: it would change the sums and the order of the ties
+        Arrays.sort(runs, Comparator.comparingInt(Parser::getRunId));
+        return fuse(runs, normalization, fusion, out);
+    }
+
+    /**
+     * Fuse the given runs
+     *
+     * @param runs          files containing the runs, in the order of the columns of the data matrix
+     * @param normalization normalization method, e.g. Normalization::SumNorm
+     * @param fusion        fusion method, e.g. Fusion::combSum
+     * @param out           destination of the fused runs, written in the same format of TopicResult.toString
+     * @return number of fused topics
+     * @throws IOException if a run can not be read or is not sorted by topic, or the output can not be written
+     */
+    public static int fuse(File[] runs, Function<TopicResult[][], TopicResult[][]> normalization,
+                           Function<TopicResult[][], TopicResult[]> fusion, Writer out) throws IOException {
+        RunReader[] readers = new RunReader[runs.length];
+        //true if the reader contains a row not yet assigned to a block
+        boolean[] pending = new boolean[runs.length];
+        //topic-local ids of the documents: docno --> id, id --> docno
+        HashMap<String, Integer> topicIds = new HashMap<>();
+        ArrayList<String> topicNames = new ArrayList<>();
+        //topic-local id of every doc index of the readers, -1 if not looked up yet
+        int[][] localIds = new int[runs.length][];
+        try {
+            for (int run = 0; run < runs.length; run++) {
+                readers[run] = new RunReader(runs[run]);
+                readers[run].setDictionaryPerBlock(true);
+                localIds[run] = new int[0];
+                pending[run] = readers[run].next();
+            }
+
+            int nTopics = 0;
+            int lastTopic = Integer.MIN_VALUE;
+            while (true) {
+                //the next topic is the smallest one among the current rows of the runs
+                int topic = Integer.MAX_VALUE;
+                boolean found = false;
+                for (int run = 0; run < runs.length; run++) {
+                    if (pending[run] && readers[run].getTopic() <= topic) {
+                        topic = readers[run].getTopic();
+                        found = true;
+                    }
+                }
+                if (!found) break;
+                if (topic <= lastTopic) throw new IOException("Runs are not sorted by topic: topic " + topic + " after " + lastTopic);
+
+                //load the block of the topic from every run
+                topicIds.clear();
+                topicNames.clear();
+                TopicResult[][] data = new TopicResult[1][runs.length];
+                for (int run = 0; run < runs.length; run++) {
+                    data[0][run] = new TopicResult(run, 0);
+                    //the dictionary of the reader has been cleared at the start of the block
+                    int[] ids = localIds[run];
+                    Arrays.fill(ids, -1);
+                    while (pending[run] && readers[run].getTopic() == topic) {
+                        RunReader reader = readers[run];
+                        int index = reader.getDocIndex();
+                        if (index >= ids.length) {
+                            int oldLength = ids.length;
+                            ids = Arrays.copyOf(ids, Math.max(index + 1, 2 * oldLength));
+                            Arrays.fill(ids, oldLength, ids.length, -1);
+                            localIds[run] = ids;
+                        }
+                        if (ids[index] == -1) ids[index] = topicId(reader.getDocName(index), topicIds, topicNames);
+                        data[0][run].appendRow(topic, ids[index], reader.getRank(), reader.getScore(), run);
+                        pending[run] = reader.next();
+                    }
+                }
+
+                TopicResult[] result = fusion.apply(normalization.apply(data));
+                out.write(result[0].toString(topicNames));
+                lastTopic = topic;
+                nTopics++;
+            }
+            return nTopics;
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) reader.close();
+            }
+        }
+    }
+
+    /**
+     * Util function for fuse, returns the topic-local id of a document, adding it if not present
+     *
+     * @param docName  TREC docno
+     * @param ids      docno --> id of the documents of the topic
+     * @param names    docno of the documents of the topic
+     * @return id of the document
+     */
+    private static int topicId(String docName, HashMap<String, Integer> ids, ArrayList<String> names) {
+        Integer id = ids.get(docName);
+        if (id == null) {
+            id = names.size();
+            ids.put(docName, id);
+            names.add(docName);
+        }
+        return id;
+    }
+}
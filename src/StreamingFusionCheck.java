@@ -0,0 +1,42 @@
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Check that the StreamingFusion gives the same result of the fusion of the data loaded by the Parser: the runs of
+ * a folder are normalized with SumNorm and fused with combSum both ways, and the outputs must be identical.
+ * Usage: StreamingFusionCheck [folder] [extension] [first topic] [number of topics]
+ */
+public class StreamingFusionCheck {
+    public static void main(String[] args) throws IOException {
+        String folderName = args.length > 0 ? args[0] : "TREC7";
+        String fileExtension = args.length > 1 ? args[1] : ".res";
+        int firstTopic = args.length > 2 ? Integer.parseInt(args[2]) : 351;
+        int nTopics = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        //in memory
+        TopicResult[][] data = new Parser(folderName, fileExtension, firstTopic, nTopics).getTopicList();
+        StringBuilder expected = new StringBuilder();
+        for (TopicResult result : Fusion.combSum(Normalization.SumNorm(data))) {
+            expected.append(result.toString());
+        }
+
+        //streaming
+        StringWriter out = new StringWriter();
+        StreamingFusion.fuse(folderName, fileExtension, Normalization::SumNorm, Fusion::combSum, out);
+        String streamed = out.toString();
+
+        String[] expectedLines = expected.toString().split("\n");
+        String[] streamedLines = streamed.split("\n");
+        int different = Math.abs(expectedLines.length - streamedLines.length);
+        for (int i = 0; i < Math.min(expectedLines.length, streamedLines.length); i++) {
+            if (!expectedLines[i].equals(streamedLines[i])) different++;
+        }
+        System.out.println(expectedLines.length + " lines in memory, " + streamedLines.length + " lines streamed, "
+                + different + " different");
+        if (different > 0) {
+            System.out.println("FAILED: the streaming output differs from the in-memory fusion");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Check that the memory used by the StreamingFusion does not grow with the number of topics.
+ * Synthetic runs are written in a temporary folder, every topic with documents not seen in the other topics; the
+ * used heap is measured after a garbage collection while the topics are fused, and the check fails if it grows
+ * between the first and the last measure, or if documents are added to the global DocDictionary.
+ * Usage: StreamingMemoryCheck [runs] [topics] [documents per block]
+ */
+public class StreamingMemoryCheck {
+    //number of topics between two measures of the heap
+    private static final int SAMPLE_INTERVAL = 200;
+    //tolerated growth of the used heap, in bytes
+    private static final long TOLERANCE = 4L << 20;
+
+    public static void main(String[] args) throws IOException {
+        int nRuns = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int nTopics = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int nDocs = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        File folder = Files.createTempDirectory("streaming").toFile();
+        File[] runs = new File[nRuns];
+        try {
+            Random random = new Random(42);
+            for (int run = 0; run < nRuns; run++) {
+                runs[run] = new File(folder, "run_" + run + ".res");
+                try (Writer out = new BufferedWriter(new FileWriter(runs[run]))) {
+                    for (int topic = 0; topic < nTopics; topic++) {
+                        double score = 100 * random.nextDouble();
+                        for (int i = 0; i < nDocs; i++) {
+                            out.write(topic + " Q0 DOC-" + topic + "-" + random.nextInt(2 * nDocs) + " " + i + " "
+                                    + score + " run" + run + "\n");
+                            score -= random.nextDouble() / nDocs;
+                        }
+                    }
+                }
+            }
+            System.out.println(nRuns + " runs, " + nTopics + " topics, " + nDocs + " documents per block");
+
+            int dictionarySize = DocDictionary.size();
+            HeapSampler sampler = new HeapSampler();
+            int fused = StreamingFusion.fuse(runs, Normalization::SumNorm, Fusion::combSum, sampler);
+            System.out.println(fused + " topics fused");
+            System.out.printf("used heap: %d KB after %d topics, %d KB after %d topics%n",
+                    sampler.first / 1024, SAMPLE_INTERVAL, sampler.last / 1024, sampler.topics);
+            System.out.println("documents added to the DocDictionary: " + (DocDictionary.size() - dictionarySize));
+
+            if (DocDictionary.size() != dictionarySize || sampler.last - sampler.first > TOLERANCE) {
+                System.out.println("FAILED: the memory grows with the number of topics");
+                System.exit(1);
+            }
+            System.out.println("OK");
+        } finally {
+            for (File run : runs) {
+                if (run != null) Files.deleteIfExists(run.toPath());
+            }
+            Files.deleteIfExists(folder.toPath());
+        }
+    }
+
+    /**
+     * Output of the fusion that drops the results and measures the used heap every SAMPLE_INTERVAL topics.
+     * StreamingFusion writes every topic with a single call
+     */
+    private static class HeapSampler extends Writer {
+        private int topics;
+        private long first = -1;
+        private long last;
+
+        @Override
+        public void write(String str) {
+            topics++;
+            if (topics % SAMPLE_INTERVAL == 0) {
+                last = usedHeap();
+                if (first == -1) first = last;
+            }
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private static long usedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+}
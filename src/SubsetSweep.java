@@ -0,0 +1,138 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fusion of many subsets of the same runs.
+ * The subsets are visited in Gray code order, so that two consecutive subsets differ by few runs (exactly one when
+ * all the subsets are visited): the FusionAccumulator of a subset is obtained from the one of the previous subset by
+ * adding and removing these runs, instead of fusing all the runs of the subset from scratch.
+ * <p>
+ * A subset is a bit mask: bit r is set if run r of the data matrix belongs to the subset.
+ */
+public class SubsetSweep {
+    private final TopicResult[][] data;
+    private final int nRuns;
+
+    /**
+     * Function called for each subset of runs
+     */
+    public interface SubsetVisitor {
+        /**
+         * @param mask        runs of the subset
+         * @param accumulator accumulator containing exactly the runs of the subset; it is reused for the next
+         *                    subset, so it must not be modified or kept
+         */
+        void visit(long mask, FusionAccumulator accumulator);
+    }
+
+    /**
+     * Create a sweep over the runs of the data matrix
+     *
+     * @param data matrix of TopicResult objects data[q][r]=block of ResultRows for topic q on run r
+     */
+    public SubsetSweep(TopicResult[][] data) {
+        this.data = data;
+        nRuns = data.length == 0 ? 0 : data[0].length;
+        if (nRuns > 62) throw new IllegalArgumentException("Too many runs for a subset sweep: " + nRuns);
+    }
+
+    /**
+     * Visit all the non empty subsets of the runs, adding or removing a single run between two subsets
+     *
+     * @param visitor function called for each subset
+     */
+    public void sweepAll(SubsetVisitor visitor) {
+        FusionAccumulator accumulator = new FusionAccumulator(data);
+        long mask = 0;
+        for (long i = 1; i < 1L << nRuns; i++) {
+            //the i-th Gray code differs from the previous one in the lowest set bit of i
+            int run = Long.numberOfTrailingZeros(i);
+            if ((mask & 1L << run) == 0) {
+                accumulator.addRun(run);
+            } else {
+                accumulator.removeRun(run);
+            }
+            mask ^= 1L << run;
+            visitor.visit(mask, accumulator);
+        }
+    }
+
+    /**
+     * Visit the given subsets of the runs, in Gray code order
+     *
+     * @param masks   subsets to visit; the array is not modified
+     * @param visitor function called for each subset
+     * @throws IllegalArgumentException if a subset contains a run that is not in the data matrix
+     */
+    public void sweep(long[] masks, SubsetVisitor visitor) {
+        for (long mask : masks) {
+            if ((mask & -1L << nRuns) != 0) {
+                throw new IllegalArgumentException("Subset " + Long.toBinaryString(mask) + " contains runs beyond the "
+                        + nRuns + " runs of the data matrix");
+            }
+        }
+        //sort the subsets by position in the Gray code sequence
+        long[] ranks = new long[masks.length];
+        for (int i = 0; i < masks.length; i++) {
+            ranks[i] = grayRank(masks[i]);
+        }
+        Arrays.sort(ranks);
+
+        FusionAccumulator accumulator = new FusionAccumulator(data);
+        long mask = 0;
+        for (long rank : ranks) {
+            long next = rank ^ (rank >>> 1);
+            for (long diff = mask ^ next; diff != 0; diff &= diff - 1) {
+                int run = Long.numberOfTrailingZeros(diff);
+                if ((next & 1L << run) != 0) {
+                    accumulator.addRun(run);
+                } else {
+                    accumulator.removeRun(run);
+                }
+            }
+            mask = next;
+            visitor.visit(mask, accumulator);
+        }
+    }
+
+    /**
+     * Draw random subsets of the runs with a given number of runs
+     *
+     * @param nRuns   total number of runs
+     * @param size    number of runs in each subset
+     * @param count   number of subsets
+     * @param random  source of randomness
+     * @return subsets, possibly repeated
+     */
+    public static long[] sample(int nRuns, int size, int count, Random random) {
+        if (size > nRuns) throw new IllegalArgumentException("Subset of " + size + " runs out of " + nRuns);
+        long[] masks = new long[count];
+        int[] runs = new int[nRuns];
+        for (int i = 0; i < count; i++) {
+            for (int r = 0; r < nRuns; r++) runs[r] = r;
+            //partial Fisher-Yates shuffle
+            for (int r = 0; r < size; r++) {
+                int j = r + random.nextInt(nRuns - r);
+                int temp = runs[r];
+                runs[r] = runs[j];
+                runs[j] = temp;
+                masks[i] |= 1L << runs[r];
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Util function for sweep, find the position of a subset in the Gray code sequence
+     *
+     * @param mask subset
+     * @return position of the subset
+     */
+    private static long grayRank(long mask) {
+        long rank = mask;
+        for (int shift = 1; shift < 64; shift <<= 1) {
+            rank ^= rank >>> shift;
+        }
+        return rank;
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Benchmark of the SubsetSweep against the path of MainAutomated.
+ * MainAutomated fuses 20 random subsets for every number of runs from 2 to nRuns, parsing and fusing each subset
+ * from scratch; the sweep parses the runs once and visits all the non empty subsets with a FusionAccumulator.
+ * Both compute combSum, combAnz and combMnz of the sum-normalized scores; the results are not written.
+ * The sweep is also timed without building the rankings, to separate the cost of adding and removing the runs from
+ * the cost of sorting the fused documents of every subset.
+ * Usage: SubsetSweepBenchmark [folder] [extension]
+ */
+public class SubsetSweepBenchmark {
+    private static final int FIRST_TOPIC = 351;
+    private static final int N_TOPICS = 50;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        String folder = args.length > 0 ? args[0] : "TREC7";
+        String extension = args.length > 1 ? args[1] : ".res";
+        Set<CombMethod> methods = EnumSet.of(CombMethod.SUM, CombMethod.ANZ, CombMethod.MNZ);
+        PrintStream console = System.out;
+        //the Parser prints the files of every subset
+        PrintStream silent = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        });
+
+        //warm up the MainAutomated path (the sweep warms up on its first subsets), so that the timings do not
+        //include the compilation
+        System.setOut(silent);
+        int nRuns = new Parser(folder, extension, FIRST_TOPIC, N_TOPICS, true).getTopicList()[0].length;
+        currentPath(folder, extension, nRuns, methods, 1);
+        System.setOut(console);
+
+        System.setOut(silent);
+        long start = System.nanoTime();
+        int randomSubsets = currentPath(folder, extension, nRuns, methods, ITERATIONS);
+        long current = System.nanoTime() - start;
+        start = System.nanoTime();
+        long allSubsets = sweepPath(folder, extension, methods);
+        long sweep = System.nanoTime() - start;
+        start = System.nanoTime();
+        sweepPath(folder, extension, EnumSet.noneOf(CombMethod.class));
+        long updates = System.nanoTime() - start;
+        System.setOut(console);
+
+        System.out.printf("MainAutomated path: %d random subsets in %d ms (%.1f ms per subset)%n",
+                randomSubsets, current / 1000000, current / 1e6 / randomSubsets);
+        System.out.printf("SubsetSweep: %d subsets in %d ms (%.1f ms per subset)%n",
+                allSubsets, sweep / 1000000, sweep / 1e6 / allSubsets);
+        System.out.printf("SubsetSweep without rankings: %d subsets in %d ms (%.1f ms per subset)%n",
+                allSubsets, updates / 1000000, updates / 1e6 / allSubsets);
+    }
+
+    /**
+     * Util function for main, parse, normalize and fuse random subsets of the runs as in MainAutomated
+     *
+     * @return number of subsets fused
+     */
+    private static int currentPath(String folder, String extension, int nRuns, Set<CombMethod> methods, int iterations) {
+        int subsets = 0;
+        for (int nDoc = 2; nDoc <= nRuns; nDoc++) {
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                Parser p = new Parser(folder, extension, FIRST_TOPIC, N_TOPICS, nDoc, true);
+                EnumMap<CombMethod, TopicResult[]> comb = CombEngine.fuse(p.getTopicList(), NormMethod.SUM, methods, false);
+                if (comb.size() != methods.size()) throw new IllegalStateException("Missing fusion results");
+                subsets++;
+            }
+        }
+        return subsets;
+    }
+
+    /**
+     * Util function for main, parse and normalize all the runs once, then fuse all their subsets
+     *
+     * @return number of subsets fused
+     */
+    private static long sweepPath(String folder, String extension, Set<CombMethod> methods) {
+        TopicResult[][] data = new Parser(folder, extension, FIRST_TOPIC, N_TOPICS, true).getTopicList();
+        TopicResult[][] normData = Normalization.SumNorm(data);
+        long[] subsets = {0};
+        new SubsetSweep(normData).sweepAll((mask, accumulator) -> {
+            for (CombMethod method : methods) {
+                accumulator.getResult(method);
+            }
+            subsets[0]++;
+        });
+        return subsets[0];
+    }
+}
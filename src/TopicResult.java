@@ -1,13 +1,38 @@
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Data structure used to represent the document list for a given Run and a given Topic
+ * Data structure used to represent the document list for a given Run and a given Topic.
+ * The rows are stored in parallel primitive columns (doc, rank, score); all the rows of a block share the same
+ * topic and run.
+ * <p>
+ * A block can be a view of another block (see normalizedView): the two blocks share the columns, and the view
+ * transforms the scores when they are read. The columns are copied only when one of the blocks is modified.
  */
 public class TopicResult {
+    private static final int INITIAL_CAPACITY = 16;
+
     private int idRun;
     private int idTopic;
-    private ArrayList<ResultRow> rows;
+    private int topic;
+    private int size;
+    private int[] doc;
+    private int[] rank;
+    private double[] score;
+    //doc --> row index, built on the first search and kept in sync by appendRow
+    private volatile DocIndex docIndex;
+    //true if the rows are known to be sorted by descending score
+    private volatile boolean sorted = true;
+    //statistics of the scores, computed on first access and discarded when the scores change
+    private volatile ScoreStats stats;
+    //true if the columns are shared with other blocks, and must be copied before modifying them
+    private volatile boolean shared;
+    //affine transformation of the scores of a view: score = (stored score - shift) / divisor + bias
+    private boolean affine;
+    private double shift;
+    private double divisor = 1;
+    private double bias;
 
     /**
      * Constructor for input run
@@ -18,7 +43,9 @@ public class TopicResult {
     public TopicResult(int idRun, int idTopic) {
         this.idRun = idRun;
         this.idTopic = idTopic;
-        rows = new ArrayList<>();
+        doc = new int[INITIAL_CAPACITY];
+        rank = new int[INITIAL_CAPACITY];
+        score = new double[INITIAL_CAPACITY];
     }
 
     /**
@@ -26,22 +53,29 @@ public class TopicResult {
      * @param idTopic id of the given topic
      */
     public TopicResult(int idTopic) {
-        this.idRun = -1;
-        this.idTopic = idTopic;
-        rows = new ArrayList<>();
+        this(-1, idTopic);
     }
 
     /**
      * Add a new document in the block of retrieved documents
      * @param idTopic given topic
-     * @param docId id of the document to be added
+     * @param docId id of the document to be added, as assigned by the DocDictionary
      * @param rank rank of this document for this topic and this run
      * @param score score of this document for this topic and this run
      * @param idRun given run
      */
-    public void appendRow(int idTopic, String docId, int rank, double score, int idRun) {
-        ResultRow r = new ResultRow(idRun, idTopic, docId, rank, score);
-        rows.add(r);
+    public void appendRow(int idTopic, int docId, int rank, double score, int idRun) {
+        ensureOwned();
+        if (size == doc.length) grow();
+        //appending in score order (as in the input runs) keeps the block sorted
+        if (sorted && size > 0 && Double.compare(this.score[size - 1], score) < 0) sorted = false;
+        this.topic = idTopic;
+        this.doc[size] = docId;
+        this.rank[size] = rank;
+        this.score[size] = score;
+        stats = null;
+        if (docIndex != null && docIndex.get(docId) == -1) docIndex.put(docId, size);
+        size++;
     }
 
     /**
@@ -49,17 +83,75 @@ public class TopicResult {
      * @param r pre-built row to add
      */
     public void appendRow(ResultRow r) {
-        rows.add(r);
+        appendRow(r.getTopic(), r.getDoc(), r.getRank(), r.getScore(), r.getRun());
+    }
+
+    /**
+     * Sort the rows by descending score. The sort is stable: rows with the same score keep their order.
+     * The block remembers to be sorted until it is modified, so repeated calls cost nothing
+     */
+    public void sortRows() {
+        if (sorted) return;
+        synchronized (this) {
+            if (!sorted) sortScores();
+        }
     }
 
+    /**
+     * Util method used by sortRows, sort the columns of the block
+     */
+    private void sortScores() {
+        ensureOwned();
+        //the rows may be still in order after a modification
+        boolean inOrder = true;
+        for (int i = 1; i < size && inOrder; i++) {
+            inOrder = Double.compare(score[i - 1], score[i]) >= 0;
+        }
+        if (inOrder) {
+            sorted = true;
+            return;
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        mergeSort(order, new int[size], 0, size);
+
+        int[] sortedDoc = new int[doc.length];
+        int[] sortedRank = new int[rank.length];
+        double[] sortedScore = new double[score.length];
+        for (int i = 0; i < size; i++) {
+            sortedDoc[i] = doc[order[i]];
+            sortedRank[i] = rank[order[i]];
+            sortedScore[i] = score[order[i]];
+        }
+        doc = sortedDoc;
+        rank = sortedRank;
+        score = sortedScore;
+        docIndex = null;
+        //the sum depends on the order of the scores
+        stats = null;
+        sorted = true;
+    }
 
     /**
-     * Returns the block of rows sorted by asc ranking
+     * Returns a read-only view of the block of rows sorted by asc ranking.
+     * The block is sorted only if it has been modified since the last sort. The returned rows are copies: use the
+     * setters of the TopicResult to modify the block
      * @return sorted rows
      */
-    public ArrayList<ResultRow> getResultRows() {
-        Collections.sort(rows);
-        return rows;
+    public List<ResultRow> getResultRows() {
+        sortRows();
+        return new AbstractList<ResultRow>() {
+            @Override
+            public ResultRow get(int index) {
+                return getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
     /**
@@ -67,22 +159,81 @@ public class TopicResult {
      * @return sorted copy of rows
      */
     public TopicResult getResultRowsCopy() {
-        Collections.sort(rows);
+        sortRows();
         TopicResult copy = new TopicResult(idRun, idTopic);
-        for (ResultRow row : rows) {
-            copy.appendRow(row.getTopic(), row.getDoc(), row.getRank(), row.getScore(), row.getRun());
-        }
+        copy.topic = topic;
+        copy.size = size;
+        copy.doc = Arrays.copyOf(doc, Math.max(size, INITIAL_CAPACITY));
+        copy.rank = Arrays.copyOf(rank, Math.max(size, INITIAL_CAPACITY));
+        copy.score = transformedScores(Math.max(size, INITIAL_CAPACITY));
+        copy.sorted = true;
         return copy;
     }
 
+    /**
+     * Returns the statistics of the scores, computed on the rows sorted by asc ranking.
+     * The statistics are computed on the first call and kept until the block is modified
+     * @return statistics of the scores
+     */
+    public ScoreStats getStats() {
+        sortRows();
+        ScoreStats s = stats;
+        if (s == null) {
+            s = new ScoreStats(affine ? transformedScores(size) : score, size);
+            stats = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns a view of the block with transformed scores: score = (score - shift) / divisor + bias.
+     * The view shares the rows with this block, so it is created in constant time; the rows are copied only when
+     * the view or this block are modified
+     * @param shift   value subtracted from the scores
+     * @param divisor value dividing the shifted scores
+     * @param bias    value added to the scaled scores
+     * @return view of the block sorted by asc ranking
+     */
+    public TopicResult normalizedView(double shift, double divisor, double bias) {
+        sortRows();
+        //a transformation is not applied to the scores of another view, to keep the same rounding of a copy
+        TopicResult base = affine ? getResultRowsCopy() : this;
+        base.shared = true;
+        TopicResult view = new TopicResult(idRun, idTopic);
+        view.topic = base.topic;
+        view.size = base.size;
+        view.doc = base.doc;
+        view.rank = base.rank;
+        view.score = base.score;
+        view.shared = true;
+        view.affine = shift != 0 || divisor != 1 || bias != 0;
+        view.shift = shift;
+        view.divisor = divisor;
+        view.bias = bias;
+        //a positive scale keeps the order of the scores
+        view.sorted = divisor > 0;
+        return view;
+    }
+
     /**
      * Returns the TopicResult formatted like the input runs
      * @return block of rows relative to this Topicresult
      */
     public String toString() {
+        return toString(null);
+    }
+
+    /**
+     * Returns the TopicResult formatted like the input runs, with the doc ids looked up in the given list
+     * @param docNames docno of every doc id, null to use the DocDictionary
+     * @return block of rows relative to this Topicresult
+     */
+    public String toString(List<String> docNames) {
         StringBuilder res = new StringBuilder();
-        for (ResultRow r : rows) {
-            res.append('\n').append(r.toString());
+        for (int i = 0; i < size; i++) {
+            String docName = docNames == null ? DocDictionary.getName(doc[i]) : docNames.get(doc[i]);
+            res.append('\n').append(topic).append(" Q0 ").append(docName)
+                    .append(' ').append(rank[i]).append(' ').append(score(i)).append(" OUTPUT");
         }
         return res.toString();
     }
@@ -92,7 +243,7 @@ public class TopicResult {
      * @return
      */
     public int size() {
-        return rows.size();
+        return size;
     }
 
     /**
@@ -111,13 +262,24 @@ public class TopicResult {
         return idTopic;
     }
 
+    /**
+     * get the topic number of the i-th document in the topicResult
+     * @param index document index
+     * @return topic number, as written in the runs
+     */
+    public int getTopic(int index) {
+        checkIndex(index);
+        return topic;
+    }
+
     /**
      * get doc Id of the i-th document in the topicResult
      * @param index document index
-     * @return id doc
+     * @return id doc in the DocDictionary
      */
-    public String getDoc(int index) {
-        return rows.get(index).getDoc();
+    public int getDoc(int index) {
+        checkIndex(index);
+        return doc[index];
     }
 
     /**
@@ -126,7 +288,21 @@ public class TopicResult {
      * @return score
      */
     public double getScore(int index) {
-        return rows.get(index).getScore();
+        checkIndex(index);
+        return score(index);
+    }
+
+    /**
+     * copy the scores of all the documents of the topicResult, in the order of the rows
+     * @param dst    destination array
+     * @param dstPos position in the destination of the score of the first document
+     */
+    public void getScores(double[] dst, int dstPos) {
+        if (affine) {
+            ScoreKernels.normalize(score, 0, dst, dstPos, size, shift, divisor, bias);
+        } else {
+            System.arraycopy(score, 0, dst, dstPos, size);
+        }
     }
 
     /**
@@ -135,16 +311,18 @@ public class TopicResult {
      * @return rank
      */
     public int getRank(int index) {
-        return rows.get(index).getRank();
+        checkIndex(index);
+        return rank[index];
     }
 
     /**
-     * get the i-th row in the topicResult
+     * get a copy of the i-th row in the topicResult
      * @param index document index
      * @return i-th row
      */
     public ResultRow getRow(int index) {
-        return rows.get(index);
+        checkIndex(index);
+        return new ResultRow(idRun, topic, doc[index], rank[index], score(index));
     }
 
     /**
@@ -152,8 +330,11 @@ public class TopicResult {
      * @param index document index
      * @param doc new idDoc
      */
-    public void setDoc(int index, String doc) {
-        rows.get(index).setDoc(doc);
+    public void setDoc(int index, int doc) {
+        checkIndex(index);
+        ensureOwned();
+        this.doc[index] = doc;
+        docIndex = null;
     }
 
     /**
@@ -162,30 +343,123 @@ public class TopicResult {
      * @param s new score
      */
     public void setScore(int index, double s) {
-        rows.get(index).setScore(s);
+        checkIndex(index);
+        ensureOwned();
+        score[index] = s;
+        stats = null;
+        sorted = false;
     }
 
     /**
      * Order the rows in the topicresult and assign ranking
      */
     public void computeRanking() {
-        Collections.sort(rows);
-        for (int i = 0; i < rows.size(); i++) {
-            rows.get(i).setRank(i);
-            rows.get(i).setRun(-1);
+        sortRows();
+        ensureOwned();
+        for (int i = 0; i < size; i++) {
+            rank[i] = i;
         }
+        idRun = -1;
     }
 
     /**
-     * Returns the index of a document in the topicResult
+     * Returns the index of a document in the topicResult.
+     * The first call builds a hash index of the documents, so the following searches take constant time
      * @param doc id of the document to search
      * @return index of the document, -1 if not present
      */
-    public int search(String doc) {
-        for (int r = 0; r < rows.size(); r++) {
-            if (rows.get(r).getDoc().equals(doc)) return r;
+    public int search(int doc) {
+        DocIndex index = docIndex;
+        if (index == null) {
+            //built under the lock of sortRows, and published only when complete, so concurrent readers can share it
+            synchronized (this) {
+                index = docIndex;
+                if (index == null) {
+                    index = new DocIndex(size);
+                    //insert backwards so that a duplicated document maps to its first row
+                    for (int r = size - 1; r >= 0; r--) {
+                        index.put(this.doc[r], r);
+                    }
+                    docIndex = index;
+                }
+            }
+        }
+        return index.get(doc);
+    }
+
+    /**
+     * Util method, returns the i-th score with the transformation of the view applied
+     */
+    private double score(int index) {
+        if (!affine) return score[index];
+        //skip a zero bias, which would turn a -0.0 into 0.0
+        double s = (score[index] - shift) / divisor;
+        return bias != 0 ? s + bias : s;
+    }
+
+    /**
+     * Util method, returns a copy of the scores with the transformation of the view applied
+     * @param capacity length of the copy
+     */
+    private double[] transformedScores(int capacity) {
+        if (!affine) return Arrays.copyOf(score, capacity);
+        double[] copy = new double[capacity];
+        ScoreKernels.normalize(score, 0, copy, 0, size, shift, divisor, bias);
+        return copy;
+    }
+
+    /**
+     * Util method called before modifying the columns, copy the columns shared with other blocks
+     */
+    private void ensureOwned() {
+        if (!shared) return;
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        doc = Arrays.copyOf(doc, capacity);
+        rank = Arrays.copyOf(rank, capacity);
+        score = transformedScores(capacity);
+        affine = false;
+        shift = 0;
+        divisor = 1;
+        bias = 0;
+        shared = false;
+    }
+
+    private void grow() {
+        int capacity = 2 * doc.length;
+        doc = Arrays.copyOf(doc, capacity);
+        rank = Arrays.copyOf(rank, capacity);
+        score = Arrays.copyOf(score, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Stable merge sort of row indexes by descending score
+     *
+     * @param order row indexes to sort
+     * @param aux   support array, same length of order
+     * @param start first index (inclusive)
+     * @param end   last index (exclusive)
+     */
+    private void mergeSort(int[] order, int[] aux, int start, int end) {
+        if (end - start < 2) return;
+        int mid = (start + end) >>> 1;
+        mergeSort(order, aux, start, mid);
+        mergeSort(order, aux, mid, end);
+        if (Double.compare(score[order[mid]], score[order[mid - 1]]) <= 0) return;
+        System.arraycopy(order, start, aux, start, end - start);
+        int i = start;
+        int j = mid;
+        for (int k = start; k < end; k++) {
+            //take from the right half only if strictly better, so equal scores keep their order
+            if (j < end && (i >= mid || Double.compare(score[aux[j]], score[aux[i]]) > 0)) {
+                order[k] = aux[j++];
+            } else {
+                order[k] = aux[i++];
+            }
         }
-        return -1;
     }
 
 }